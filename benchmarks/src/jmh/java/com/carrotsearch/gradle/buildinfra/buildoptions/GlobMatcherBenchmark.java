@@ -0,0 +1,76 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of matching class names against a list of glob patterns: the shared trie-based matcher of
+ * pattern list options versus a linear scan of compiled regular expressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GlobMatcherBenchmark {
+  @Param({"10", "1000"})
+  public int patterns;
+
+  private GlobMatcher matcher;
+  private List<Pattern> regexps;
+  private List<String> classNames;
+
+  @Setup
+  public void setup() {
+    var globs = new ArrayList<String>();
+    for (int i = 0; i < patterns; i++) {
+      globs.add("org.example.module" + i + ".*Test");
+    }
+    matcher = GlobMatcher.parse(String.join(",", globs));
+    regexps = globs.stream().map(OptionGlobs::toPattern).toList();
+
+    classNames = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      classNames.add("org.example.module" + (i * 37 % (patterns * 2)) + ".SomeClass" + i + "Test");
+    }
+  }
+
+  @Benchmark
+  public int globMatcher() {
+    int matches = 0;
+    for (var name : classNames) {
+      if (matcher.matches(name)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int regexScan() {
+    int matches = 0;
+    for (var name : classNames) {
+      for (var regexp : regexps) {
+        if (regexp.matcher(name).matches()) {
+          matches++;
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+}
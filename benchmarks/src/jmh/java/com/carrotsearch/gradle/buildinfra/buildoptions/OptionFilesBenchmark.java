@@ -0,0 +1,58 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of parsing build option files (cold) and of looking them up through the parse cache. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OptionFilesBenchmark {
+  @Param({"10", "1000"})
+  public int keys;
+
+  private Path file;
+
+  @Setup
+  public void setup() throws IOException {
+    file = Files.createTempFile("build-options", ".properties");
+    var sb = new StringBuilder();
+    for (int i = 0; i < keys; i++) {
+      sb.append("option.").append(i).append(" = value-").append(i).append('\n');
+    }
+    Files.writeString(file, sb);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public Map<String, String> parse() {
+    return OptionFiles.parse(file);
+  }
+
+  @Benchmark
+  public Map<String, String> cachedRead() {
+    return OptionFiles.read(file);
+  }
+}
@@ -0,0 +1,42 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of finding option names closest to a mistyped key (unknown option suggestions). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OptionNameIndexBenchmark {
+  @Param({"100", "5000"})
+  public int options;
+
+  private OptionNameIndex index;
+
+  @Setup
+  public void setup() {
+    index = new OptionNameIndex();
+    for (int i = 0; i < options; i++) {
+      index.add("module" + (i % 50) + ".option." + i);
+    }
+  }
+
+  @Benchmark
+  public List<String> nearest() {
+    return index.nearest("modul17.option." + (options / 2), 3);
+  }
+}
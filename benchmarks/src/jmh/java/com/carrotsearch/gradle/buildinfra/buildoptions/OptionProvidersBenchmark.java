@@ -0,0 +1,73 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.concurrent.TimeUnit;
+import org.gradle.api.provider.Provider;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution cost of option values through the {@code asStringProvider}, {@code
+ * asBooleanProvider} and {@code asIntProvider} mapping chains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OptionProvidersBenchmark {
+  private Provider<String> stringOption;
+  private Provider<Boolean> booleanOption;
+  private Provider<Integer> intOption;
+  private Provider<String> overriddenOption;
+  private Provider<Integer> lazyIntOption;
+
+  @Setup
+  public void setup() {
+    var project = ProjectBuilder.builder().build();
+    project.getPluginManager().apply(BuildOptionsPlugin.class);
+    var options = project.getExtensions().getByType(BuildOptionsExtension.class);
+
+    stringOption = options.addOption("bench.string", "String option.", "value");
+    booleanOption = options.addBooleanOption("bench.boolean", "Boolean option.", true);
+    intOption = options.addIntOption("bench.int", "Integer option.", 42);
+    lazyIntOption = options.registerIntOption("bench.lazyInt", "Lazy integer option.", 42);
+
+    System.setProperty("bench.overridden", "overridden");
+    overriddenOption = options.addOption("bench.overridden", "Overridden option.", "value");
+  }
+
+  @Benchmark
+  public String asStringProvider() {
+    return stringOption.get();
+  }
+
+  @Benchmark
+  public Boolean asBooleanProvider() {
+    return booleanOption.get();
+  }
+
+  @Benchmark
+  public Integer asIntProvider() {
+    return intOption.get();
+  }
+
+  @Benchmark
+  public Integer registeredIntProvider() {
+    return lazyIntOption.get();
+  }
+
+  @Benchmark
+  public String systemPropertyOverride() {
+    return overriddenOption.get();
+  }
+}
@@ -0,0 +1,60 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of grouping identical options from many projects in the options report. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OptionReportBenchmark {
+  @Param({"10", "600"})
+  public int projects;
+
+  @Param({"20"})
+  public int options;
+
+  private List<OptionDescriptor> descriptors;
+
+  @Setup
+  public void setup() {
+    descriptors = new ArrayList<>();
+    for (int p = 0; p < projects; p++) {
+      for (int o = 0; o < options; o++) {
+        descriptors.add(
+            new OptionDescriptor(
+                ":project-" + p,
+                "option." + o,
+                BuildOptionType.STRING,
+                "Option " + o,
+                "value-" + o,
+                null,
+                BuildOptionValueSource.EXPLICIT_VALUE,
+                null,
+                "value-" + o,
+                true));
+      }
+    }
+  }
+
+  @Benchmark
+  public Map<BuildOptionsTask.OptionKey, List<OptionDescriptor>> groupByOptionKey() {
+    return BuildOptionsTask.groupByOptionKey(descriptors);
+  }
+}
@@ -0,0 +1,205 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+/**
+ * Generates a build with N projects, each declaring M options, and measures its configuration time
+ * and heap use: without the configuration cache, when the configuration cache entry is stored and
+ * when it is reused.
+ */
+public class ConfigurationBenchmark {
+  private static final Pattern HEAP_USED = Pattern.compile("benchmark-heap-used: (\\d+)");
+
+  private final int projects;
+  private final int options;
+  private final int iterations;
+  private final Path workDir;
+  private final List<File> pluginClasspath;
+
+  ConfigurationBenchmark(
+      int projects, int options, int iterations, Path workDir, List<File> pluginClasspath) {
+    this.projects = projects;
+    this.options = options;
+    this.iterations = iterations;
+    this.workDir = workDir;
+    this.pluginClasspath = pluginClasspath;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int projects = 100;
+    int options = 20;
+    int iterations = 5;
+    Path workDir = Path.of("build", "configuration-benchmark");
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--projects" -> projects = Integer.parseInt(args[++i]);
+        case "--options" -> options = Integer.parseInt(args[++i]);
+        case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+        case "--work-dir" -> workDir = Path.of(args[++i]);
+        default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+      }
+    }
+
+    var classpath = System.getProperty("benchmark.pluginClasspath");
+    if (classpath == null) {
+      throw new IllegalArgumentException("benchmark.pluginClasspath system property is required.");
+    }
+    var pluginClasspath =
+        Arrays.stream(classpath.split(File.pathSeparator)).map(File::new).toList();
+
+    new ConfigurationBenchmark(projects, options, iterations, workDir, pluginClasspath).run();
+  }
+
+  void run() throws IOException {
+    generateBuild();
+
+    System.out.printf(
+        Locale.ROOT,
+        "Generated build: %d projects x %d options, %d iterations.%n",
+        projects,
+        options,
+        iterations);
+
+    // The first (warm-up) run starts the test kit daemon.
+    gradle(false);
+
+    report("no configuration cache", measure(() -> gradle(false)));
+    report(
+        "configuration cache (store)",
+        measure(
+            () -> {
+              deleteConfigurationCache();
+              return gradle(true);
+            }));
+    gradle(true);
+    report("configuration cache (reuse)", measure(() -> gradle(true)));
+  }
+
+  private record Sample(long millis, long heapUsed) {}
+
+  private interface BuildRun {
+    BuildResult run();
+  }
+
+  private List<Sample> measure(BuildRun build) {
+    var samples = new ArrayList<Sample>();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      var result = build.run();
+      long millis = (System.nanoTime() - start) / 1_000_000;
+
+      var m = HEAP_USED.matcher(result.getOutput());
+      samples.add(new Sample(millis, m.find() ? Long.parseLong(m.group(1)) : -1));
+    }
+    return samples;
+  }
+
+  private static void report(String label, List<Sample> samples) {
+    var millis = samples.stream().mapToLong(Sample::millis).sorted().toArray();
+    var heap = samples.stream().mapToLong(Sample::heapUsed).filter(v -> v >= 0).max();
+    System.out.printf(
+        Locale.ROOT,
+        "%-30s min: %6d ms, median: %6d ms, max: %6d ms, heap after configuration: %s%n",
+        label,
+        millis[0],
+        millis[millis.length / 2],
+        millis[millis.length - 1],
+        heap.isPresent() ? (heap.getAsLong() / (1024 * 1024)) + " MB" : "n/a");
+  }
+
+  private BuildResult gradle(boolean configurationCache) {
+    var args = new ArrayList<String>();
+    args.add("noop");
+    args.add(configurationCache ? "--configuration-cache" : "--no-configuration-cache");
+    return GradleRunner.create()
+        .withProjectDir(workDir.toFile())
+        .withPluginClasspath(pluginClasspath)
+        .withArguments(args)
+        .build();
+  }
+
+  private void deleteConfigurationCache() {
+    var ccDir = workDir.resolve(".gradle/configuration-cache");
+    if (Files.exists(ccDir)) {
+      try (Stream<Path> paths = Files.walk(ccDir)) {
+        paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void generateBuild() throws IOException {
+    Files.createDirectories(workDir);
+
+    var settings = new StringBuilder();
+    settings.append("rootProject.name = 'configuration-benchmark'\n\n");
+    for (int p = 0; p < projects; p++) {
+      settings.append("include('project-").append(p).append("')\n");
+    }
+    // Report heap use once all projects are configured (not printed on configuration cache hits).
+    settings.append(
+        """
+
+        gradle.projectsEvaluated {
+          System.gc()
+          def rt = Runtime.getRuntime()
+          println "benchmark-heap-used: " + (rt.totalMemory() - rt.freeMemory())
+        }
+        """);
+    write(workDir.resolve("settings.gradle"), settings.toString());
+
+    write(
+        workDir.resolve("build.gradle"),
+        """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        tasks.register("noop")
+        """);
+
+    for (int p = 0; p < projects; p++) {
+      var build = new StringBuilder();
+      build.append(
+          """
+          plugins {
+            id('com.carrotsearch.gradle.opts')
+          }
+
+          buildOptions {
+            addIntOption("tests.jvms", "Number of forked test JVMs.", 4)
+          """);
+      for (int o = 0; o < options; o++) {
+        build.append(
+            String.format(
+                Locale.ROOT,
+                "  addOption(\"option.%d\", \"Option %d.\", \"value-%d\")%n",
+                o,
+                o,
+                o));
+      }
+      build.append("}\n\ntasks.register(\"noop\")\n");
+      write(workDir.resolve("project-" + p).resolve("build.gradle"), build.toString());
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+}
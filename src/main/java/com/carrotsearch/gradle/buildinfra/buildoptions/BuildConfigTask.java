@@ -0,0 +1,264 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Generates a Java class (or a properties resource) with constants holding resolved values of
+ * selected build options, for example version strings or feature flags:
+ *
+ * <pre>
+ * def buildConfig = tasks.register("buildConfig", BuildConfigTask) {
+ *   className = "com.example.BuildConfig"
+ *   options("version", "feature.*")
+ * }
+ * sourceSets.main.java.srcDir(buildConfig)
+ * </pre>
+ *
+ * <p>The only inputs are the selected options' resolved values (and types), so the task is
+ * up-to-date (or restored from the build cache), and the generated file untouched, as long as they
+ * don't change. The output directory is cleared before the file is generated, so it must be
+ * dedicated to this task.
+ */
+@CacheableTask
+public abstract class BuildConfigTask extends DefaultTask {
+  public enum Format {
+    /** A Java class with {@code public static final} constants. */
+    JAVA,
+    /** A properties resource file (in the class name's package directory). */
+    PROPERTIES
+  }
+
+  /** The fully qualified name of the generated class (or resource file, without extension). */
+  @Input
+  public abstract Property<String> getClassName();
+
+  @Input
+  public abstract Property<Format> getFormat();
+
+  /** Resolved values of selected options, keyed by option name. */
+  @Input
+  public abstract MapProperty<String, String> getOptionValues();
+
+  /** Types of selected options, keyed by option name. */
+  @Input
+  public abstract MapProperty<String, BuildOptionType> getOptionTypes();
+
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDirectory();
+
+  @Inject
+  protected abstract FileSystemOperations getFileSystemOperations();
+
+  public BuildConfigTask() {
+    setDescription("Generates a class with constants holding values of selected build options");
+    setGroup(BuildOptionsTask.BUILD_OPTIONS_TASK_GROUP);
+    getFormat().convention(Format.JAVA);
+    getOutputDirectory()
+        .convention(getProject().getLayout().getBuildDirectory().dir("generated/" + getName()));
+  }
+
+  /**
+   * Selects options (of this project) with names matching any of the given glob patterns. Options
+   * without a value are omitted from the generated class.
+   */
+  public void options(String... patterns) {
+    var extension = getProject().getExtensions().getByType(BuildOptionsExtension.class);
+    var included = Arrays.stream(patterns).map(OptionGlobs::toPattern).toList();
+    var providers = getProject().getProviders();
+
+    getOptionValues()
+        .putAll(
+            providers.provider(
+                () -> {
+                  var values = new TreeMap<String, String>();
+                  for (var option : extension.matchingOptions(included, List.of())) {
+                    var value = option.asResolvedStringProvider().getOrNull();
+                    if (value != null) {
+                      values.put(option.getName(), value);
+                    }
+                  }
+                  return values;
+                }));
+    getOptionTypes()
+        .putAll(
+            providers.provider(
+                () -> {
+                  var types = new TreeMap<String, BuildOptionType>();
+                  for (var option : extension.matchingOptions(included, List.of())) {
+                    types.put(option.getName(), option.getType());
+                  }
+                  return types;
+                }));
+  }
+
+  @TaskAction
+  public void exec() {
+    var className = getClassName().get();
+    var values = new TreeMap<>(getOptionValues().get());
+    var types = getOptionTypes().get();
+
+    var format = getFormat().get();
+    var content =
+        switch (format) {
+          case JAVA -> javaSource(className, values, types);
+          case PROPERTIES -> properties(values);
+        };
+
+    var relativePath =
+        className.replace('.', '/') + (format == Format.JAVA ? ".java" : ".properties");
+    var outputDir = getOutputDirectory().get().getAsFile();
+    var file = outputDir.toPath().resolve(relativePath);
+
+    // Remove previously generated files (a renamed class, a different format) so that
+    // they don't linger in the source directory with stale values.
+    getFileSystemOperations().delete(spec -> spec.delete(outputDir));
+    try {
+      Files.createDirectories(file.getParent());
+      Files.writeString(file, content, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new GradleException("Can't write build config file: " + file, e);
+    }
+  }
+
+  private static String javaSource(
+      String className, Map<String, String> values, Map<String, BuildOptionType> types) {
+    int lastDot = className.lastIndexOf('.');
+    var sb = new StringBuilder();
+    if (lastDot > 0) {
+      sb.append("package ").append(className, 0, lastDot).append(";\n\n");
+    }
+    sb.append("/** Values of build options (generated, do not edit). */\n");
+    sb.append("public final class ").append(className.substring(lastDot + 1)).append(" {\n");
+    sb.append("  private ").append(className.substring(lastDot + 1)).append("() {}\n");
+
+    var constants = new TreeMap<String, String>();
+    values.forEach(
+        (name, value) -> {
+          var type = types.getOrDefault(name, BuildOptionType.STRING);
+          var constant = constantName(name);
+          var previous = constants.putIfAbsent(constant, name);
+          if (previous != null) {
+            throw new GradleException(
+                String.format(
+                    Locale.ROOT,
+                    "Build options '%s' and '%s' map to the same constant name in %s: %s",
+                    previous,
+                    name,
+                    className,
+                    constant));
+          }
+          var declaration =
+              switch (type) {
+                case BOOLEAN ->
+                    "boolean " + constant + " = " + BuildOption.parseBoolean(name, type, value);
+                case INTEGER, PARALLELISM ->
+                    "int " + constant + " = " + parseNumber(name, value, Integer::parseInt);
+                case SIZE ->
+                    "long " + constant + " = " + parseNumber(name, value, Long::parseLong) + "L";
+                default -> "String " + constant + " = " + javaString(value);
+              };
+          sb.append("\n  /** Build option: ").append(escapeJavadoc(name)).append(". */\n");
+          sb.append("  public static final ").append(declaration).append(";\n");
+        });
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  private static String properties(Map<String, String> values) {
+    var sb = new StringBuilder("# Values of build options (generated, do not edit).\n");
+    values.forEach(
+        (name, value) ->
+            sb.append(escapeProperty(name, true))
+                .append("=")
+                .append(escapeProperty(value, false))
+                .append("\n"));
+    return sb.toString();
+  }
+
+  private static <T> T parseNumber(String name, String value, Function<String, T> parser) {
+    try {
+      return parser.apply(value.trim());
+    } catch (NumberFormatException e) {
+      throw new GradleException(
+          String.format(
+              Locale.ROOT, "Build option '%s' has a non-numeric value: %s", name, value));
+    }
+  }
+
+  /** Converts an option name to a constant name: {@code tests.seed} becomes {@code TESTS_SEED}. */
+  static String constantName(String optionName) {
+    var name =
+        optionName
+            .replaceAll("([a-z0-9])([A-Z])", "$1_$2")
+            .replaceAll("[^A-Za-z0-9]+", "_")
+            .toUpperCase(Locale.ROOT);
+    return name.isEmpty() || Character.isDigit(name.charAt(0)) ? "_" + name : name;
+  }
+
+  private static String javaString(String value) {
+    var sb = new StringBuilder("\"");
+    for (char chr : value.toCharArray()) {
+      switch (chr) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (chr < 0x20 || chr > 0x7e) {
+            sb.append(String.format(Locale.ROOT, "\\u%04x", (int) chr));
+          } else {
+            sb.append(chr);
+          }
+        }
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static String escapeJavadoc(String value) {
+    return value.replace("*/", "*&#47;");
+  }
+
+  private static String escapeProperty(String value, boolean isKey) {
+    var sb = new StringBuilder();
+    for (int i = 0; i < value.length(); i++) {
+      char chr = value.charAt(i);
+      switch (chr) {
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        case '=', ':', '#', '!' -> sb.append('\\').append(chr);
+        case ' ' -> sb.append(isKey || i == 0 ? "\\ " : " ");
+        default -> {
+          if (chr < 0x20 || chr > 0x7e) {
+            sb.append(String.format(Locale.ROOT, "\\u%04x", (int) chr));
+          } else {
+            sb.append(chr);
+          }
+        }
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -10,6 +10,7 @@ import org.gradle.api.file.Directory;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
 
 public abstract class BuildOption implements Named {
   private final Directory projectDirectory;
@@ -27,6 +28,9 @@ public abstract class BuildOption implements Named {
 
   abstract Property<BuildOptionValue> getDefaultValue();
 
+  @Inject
+  protected abstract ProviderFactory getProviders();
+
   public final Provider<String> asStringProvider() {
     // A boolean option passed without a value (-Poption.name, -Doption.name) means true. This
     // normalization must not happen inside the value property's own convention chain: lambdas
@@ -36,15 +40,29 @@ public abstract class BuildOption implements Named {
         .map(
             v -> {
               if (getType() == BuildOptionType.BOOLEAN
+                  && v.value() != null
                   && v.value().isEmpty()
                   && (v.source() == BuildOptionValueSource.SYSTEM_PROPERTY
                       || v.source() == BuildOptionValueSource.GRADLE_PROPERTY)) {
                 return Boolean.TRUE.toString();
               }
+              // Options pinned to no value (by a replayed snapshot) have an absent value.
               return v.value();
             });
   }
 
+  /**
+   * Returns the option's value with core-relative parallelism and memory size values resolved (to
+   * the number of workers and bytes, respectively).
+   */
+  Provider<String> asResolvedStringProvider() {
+    return switch (getType()) {
+      case PARALLELISM -> asParallelismProvider().map(String::valueOf);
+      case SIZE -> asSizeProvider().map(String::valueOf);
+      default -> asStringProvider();
+    };
+  }
+
   @Inject
   public BuildOption(Project project) {
     this.projectDirectory = project.getLayout().getProjectDirectory();
@@ -55,25 +73,30 @@ public abstract class BuildOption implements Named {
     return projectPath;
   }
 
+  Directory getProjectDirectory() {
+    return projectDirectory;
+  }
+
   public Provider<Boolean> asBooleanProvider() {
     ensureType(
         BuildOptionType.BOOLEAN, EnumSet.of(BuildOptionType.BOOLEAN, BuildOptionType.STRING));
-    return asStringProvider()
-        .map(
-            value -> {
-              String v = value.toLowerCase(Locale.ROOT);
-              if (v.equals("true") || v.equals("false")) {
-                return Boolean.parseBoolean(v);
-              }
-              throw new GradleException(
-                  String.format(
-                      Locale.ROOT,
-                      "Build option '%s' is of type %s and expects %s but was: %s",
-                      getName(),
-                      getType(),
-                      "a 'true' or 'false' value",
-                      value));
-            });
+    return asStringProvider().map(value -> parseBoolean(getName(), getType(), value));
+  }
+
+  /** Parses a boolean option value: {@code true} or {@code false}, in any case. */
+  static boolean parseBoolean(String name, BuildOptionType type, String value) {
+    String v = value.toLowerCase(Locale.ROOT);
+    if (v.equals("true") || v.equals("false")) {
+      return Boolean.parseBoolean(v);
+    }
+    throw new GradleException(
+        String.format(
+            Locale.ROOT,
+            "Build option '%s' is of type %s and expects %s but was: %s",
+            name,
+            type,
+            "a 'true' or 'false' value",
+            value));
   }
 
   public Provider<Integer> asIntProvider() {
@@ -97,6 +120,85 @@ public abstract class BuildOption implements Named {
             });
   }
 
+  /**
+   * Returns the number of parallel workers: the value is either a positive integer or an expression
+   * relative to the number of usable cores (see {@link Parallelism}).
+   */
+  public Provider<Integer> asParallelismProvider() {
+    ensureType(
+        BuildOptionType.PARALLELISM,
+        EnumSet.of(BuildOptionType.PARALLELISM, BuildOptionType.INTEGER, BuildOptionType.STRING));
+    return asStringProvider()
+        .flatMap(
+            value -> {
+              // Only core-relative expressions need the number of usable cores (and make it a
+              // configuration cache input).
+              Provider<Integer> usableCores =
+                  Parallelism.isRelative(value)
+                      ? getProviders().of(Parallelism.UsableCoresValueSource.class, spec -> {})
+                      : getProviders().provider(() -> 1);
+              return usableCores.map(
+                  cores -> {
+                    try {
+                      return Parallelism.evaluate(value, cores);
+                    } catch (IllegalArgumentException e) {
+                      throw new GradleException(
+                          String.format(
+                              Locale.ROOT,
+                              "Build option '%s' is of type %s and expects %s but was: %s (%s)",
+                              getName(),
+                              getType(),
+                              "a positive integer or a core-relative expression (0.5C, cores-1)",
+                              value,
+                              e.getMessage()));
+                    }
+                  });
+            });
+  }
+
+  /**
+   * Returns the size in bytes: the value is a number of bytes with an optional unit suffix ({@code
+   * 512m}, {@code 2g}) or a percentage of usable memory ({@code 25%}, see {@link MemorySize}).
+   */
+  public Provider<Long> asSizeProvider() {
+    ensureType(BuildOptionType.SIZE, EnumSet.of(BuildOptionType.SIZE, BuildOptionType.STRING));
+    return asStringProvider()
+        .flatMap(
+            value -> {
+              // Only percentages need the amount of usable memory (and make it a configuration
+              // cache input).
+              Provider<Long> usableMemory =
+                  MemorySize.isRelative(value)
+                      ? getProviders().of(MemorySize.UsableMemoryValueSource.class, spec -> {})
+                      : getProviders().provider(() -> -1L);
+              return usableMemory.map(
+                  memory -> {
+                    try {
+                      return MemorySize.parse(value, memory);
+                    } catch (IllegalArgumentException e) {
+                      throw new GradleException(
+                          String.format(
+                              Locale.ROOT,
+                              "Build option '%s' is of type %s and expects %s but was: %s",
+                              getName(),
+                              getType(),
+                              "a size (512m, 2g) or a percentage of memory (25%)",
+                              value));
+                    }
+                  });
+            });
+  }
+
+  /**
+   * Returns a matcher of the comma-separated glob patterns in the value (see {@link GlobMatcher}).
+   * Matchers are shared by all options (and projects) with the same value.
+   */
+  public Provider<GlobMatcher> asPatternsProvider() {
+    ensureType(
+        BuildOptionType.PATTERNS, EnumSet.of(BuildOptionType.PATTERNS, BuildOptionType.STRING));
+    return asStringProvider().map(GlobMatcher::parse);
+  }
+
   public Provider<Directory> asDirProvider() {
     ensureType(
         BuildOptionType.DIRECTORY, EnumSet.of(BuildOptionType.DIRECTORY, BuildOptionType.STRING));
@@ -129,7 +231,7 @@ public abstract class BuildOption implements Named {
   }
 
   public final boolean isPresent() {
-    return getValue().isPresent();
+    return asStringProvider().isPresent();
   }
 
   public boolean isEqualToDefaultValue() {
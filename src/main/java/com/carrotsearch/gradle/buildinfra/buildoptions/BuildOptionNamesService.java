@@ -0,0 +1,38 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Collects names of options declared in all projects (and directories with their build option
+ * files) for {@link UnknownOptions}. Each project registers its own names once it is evaluated, so
+ * no project reaches into another project's model (as isolated projects require).
+ */
+public abstract class BuildOptionNamesService
+    implements BuildService<BuildServiceParameters.None> {
+  public static final String SERVICE_NAME = "buildOptionNames";
+
+  private final Set<String> optionNames = ConcurrentHashMap.newKeySet();
+  private final Set<File> optionFileDirs = ConcurrentHashMap.newKeySet();
+
+  /** Registers option names and option file directories of a single project. */
+  void addProject(Collection<String> names, Collection<File> dirs) {
+    optionNames.addAll(names);
+    optionFileDirs.addAll(dirs);
+  }
+
+  /** Returns names of options declared in all (evaluated) projects, sorted. */
+  Set<String> getOptionNames() {
+    return new TreeSet<>(optionNames);
+  }
+
+  /** Returns directories with build option files of all (evaluated) projects, sorted. */
+  Set<File> getOptionFileDirs() {
+    return new TreeSet<>(optionFileDirs);
+  }
+}
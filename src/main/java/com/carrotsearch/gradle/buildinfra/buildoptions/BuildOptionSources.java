@@ -0,0 +1,347 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import static com.carrotsearch.gradle.buildinfra.buildoptions.BuildOptionsPlugin.BUILD_OPTIONS_FILE;
+import static com.carrotsearch.gradle.buildinfra.buildoptions.BuildOptionsPlugin.LOCAL_BUILD_OPTIONS_FILE;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+
+/**
+ * Overrideable value sources of build options (system properties, gradle properties, environment
+ * variables and build option files). The value chain for each option name (and set of build option
+ * files) is created once and shared by all options with that name.
+ *
+ * <p>Build option files can be placed in any directory between a project's directory and the root
+ * project directory. Files closer to the project take precedence over files in parent directories
+ * (and local files, at any level, over versioned ones).
+ *
+ * <p>A single instance is shared by all projects when {@link BuildOptionsSettingsPlugin} is
+ * applied; otherwise each project creates its own.
+ */
+public final class BuildOptionSources {
+  static final String EXTENSION_NAME = "buildOptionSources";
+
+  /**
+   * The gradle property with a path (relative to the root project directory) of an option snapshot
+   * to replay (see {@link OptionSnapshots}).
+   */
+  public static final String REPLAY_PROPERTY = "buildOptions.replay";
+
+  /**
+   * The gradle (or system) property selecting active option profiles (comma-separated, earlier
+   * profiles take precedence).
+   */
+  public static final String PROFILE_PROPERTY = "buildOptions.profile";
+
+  /** The prefix of profile option keys in build option files: {@code profiles.<name>.<option>}. */
+  static final String PROFILE_KEY_PREFIX = "profiles.";
+
+  private final ProviderFactory providers;
+  private final File rootDirectory;
+  private final Map<ValueChainKey, Provider<BuildOptionValue>> valueChains =
+      new ConcurrentHashMap<>();
+  private final Map<File, List<File>> optionFileDirs = new ConcurrentHashMap<>();
+  private final Provider<Boolean> shareIdenticalOptions;
+  private final Map<SharedOptionKey, SharedOptionValue> sharedValues = new ConcurrentHashMap<>();
+  @Nullable private final Provider<BuildOptionsUsageService> usage;
+  @Nullable private final Provider<BuildOptionsTimingService> timing;
+  @Nullable private final Provider<OptionSnapshots.Snapshot> replayedSnapshot;
+  private final List<String> activeProfiles;
+  private final Map<String, Map<String, String>> profiles = new ConcurrentHashMap<>();
+
+  /** Option name and directories with build option files (closest to the project first). */
+  private record ValueChainKey(String name, List<File> optionFileDirs) {}
+
+  /** Identity of options that can share one canonical value across projects. */
+  private record SharedOptionKey(
+      String name,
+      BuildOptionType type,
+      String description,
+      @Nullable BuildOptionValue defaultValue,
+      List<File> optionFileDirs) {}
+
+  /** A canonical value (and default value) shared by identical options. */
+  record SharedOptionValue(
+      Provider<BuildOptionValue> value, @Nullable BuildOptionValue defaultValue) {}
+
+  BuildOptionSources(
+      ProviderFactory providers,
+      File rootDirectory,
+      Provider<Boolean> shareIdenticalOptions,
+      @Nullable Provider<BuildOptionsUsageService> usage,
+      @Nullable Provider<BuildOptionsTimingService> timing) {
+    this.providers = providers;
+    this.rootDirectory = rootDirectory;
+    this.shareIdenticalOptions = shareIdenticalOptions;
+    this.usage = usage;
+    this.timing = timing;
+    var snapshotFile =
+        providers
+            .gradleProperty(REPLAY_PROPERTY)
+            .map(path -> rootDirectory.toPath().resolve(path).toFile())
+            .getOrNull();
+    // A single value source (which obtains its value once) for all options, so that the snapshot
+    // is read and parsed once per build rather than once per option.
+    this.replayedSnapshot =
+        snapshotFile == null
+            ? null
+            : providers.of(
+                BuildOptionsPlugin.ReplayedValueSource.class,
+                valueSource -> valueSource.getParameters().getSnapshotFile().set(snapshotFile));
+    this.activeProfiles =
+        providers
+            .systemProperty(PROFILE_PROPERTY)
+            .orElse(providers.gradleProperty(PROFILE_PROPERTY))
+            .map(
+                v ->
+                    Arrays.stream(v.split(","))
+                        .map(String::trim)
+                        .filter(name -> !name.isEmpty())
+                        .toList())
+            .getOrElse(List.of());
+  }
+
+  /**
+   * Defines (or extends) a profile: a named set of option values, used when the profile is active
+   * (see {@link #PROFILE_PROPERTY}).
+   */
+  void addProfile(String profileName, Map<String, ?> values) {
+    var profile = profiles.computeIfAbsent(profileName, k -> new ConcurrentHashMap<>());
+    values.forEach((k, v) -> profile.put(k, String.valueOf(v)));
+  }
+
+  File getRootDirectory() {
+    return rootDirectory;
+  }
+
+  /**
+   * Returns the given value provider of an option, recording its resolutions if usage tracking
+   * (or timing) is enabled.
+   */
+  Provider<BuildOptionValue> tracked(String optionName, Provider<BuildOptionValue> value) {
+    if (timing != null) {
+      value = timed(optionName, value);
+    }
+    if (usage == null) {
+      return value;
+    }
+    var usageService = usage;
+    return value.map(
+        v -> {
+          usageService.get().record(optionName, v);
+          return v;
+        });
+  }
+
+  /**
+   * Measures resolutions of the option's value. Unlike the rest of the value chain, the timed
+   * provider is not backed by value sources, so the configuration cache stores its value instead of
+   * resolving it again at execution time. Timing is a diagnostic mode, so this is acceptable.
+   */
+  private Provider<BuildOptionValue> timed(String optionName, Provider<BuildOptionValue> value) {
+    var timingService = timing;
+    return providers.provider(
+        () -> {
+          long start = System.nanoTime();
+          var resolved = value.getOrNull();
+          timingService.get().record(optionName, resolved, System.nanoTime() - start);
+          return resolved;
+        });
+  }
+
+  /**
+   * Returns the (shared) provider of an overridden value of the given option, without the option's
+   * default value. Only build option files in the root project directory are considered.
+   */
+  Provider<BuildOptionValue> valueOf(String optionName) {
+    return valueOf(optionName, List.of(rootDirectory));
+  }
+
+  private Provider<BuildOptionValue> valueOf(String optionName, List<File> dirs) {
+    return valueChains.computeIfAbsent(
+        new ValueChainKey(optionName, dirs), key -> createValueChain(optionName, dirs));
+  }
+
+  /**
+   * Returns the provider of an overridden value of the given option in the given project (with
+   * build option files in the project's directory and its parents). When an option snapshot is
+   * replayed, its values take precedence over all other sources (and default values): options
+   * without a value in the snapshot are pinned to an absent value.
+   */
+  Provider<BuildOptionValue> valueOf(String projectPath, File projectDir, String optionName) {
+    var chain = valueOf(optionName, optionFileDirs(projectDir));
+    if (replayedSnapshot == null) {
+      return chain;
+    }
+    return replayedSnapshot
+        .map(snapshot -> snapshot.valueOf(projectPath, optionName))
+        .orElse(chain);
+  }
+
+  /**
+   * Returns directories with build option files, from the given project directory up to the root
+   * project directory (closest first). The root directory is always included. Lists are computed
+   * once per directory, so projects in the same directory (or without option files of their own)
+   * share value chains.
+   */
+  List<File> optionFileDirs(File projectDir) {
+    var cached = optionFileDirs.get(projectDir);
+    if (cached != null) {
+      return cached;
+    }
+
+    List<File> dirs;
+    var parent = projectDir.getParentFile();
+    if (projectDir.equals(rootDirectory)
+        || parent == null
+        || !projectDir.toPath().startsWith(rootDirectory.toPath())) {
+      dirs = List.of(rootDirectory);
+    } else if (new File(projectDir, BUILD_OPTIONS_FILE).isFile()
+        || new File(projectDir, LOCAL_BUILD_OPTIONS_FILE).isFile()) {
+      var withParents = new ArrayList<File>();
+      withParents.add(projectDir);
+      withParents.addAll(optionFileDirs(parent));
+      dirs = List.copyOf(withParents);
+    } else {
+      dirs = optionFileDirs(parent);
+    }
+    optionFileDirs.put(projectDir, dirs);
+    return dirs;
+  }
+
+  /**
+   * Whether options with the same name, type, description and explicit default value should share
+   * one canonical value. Options don't share values when a snapshot is replayed, since replayed
+   * values are per-project.
+   */
+  boolean isSharingIdenticalOptions() {
+    return replayedSnapshot == null && shareIdenticalOptions.getOrElse(false);
+  }
+
+  /**
+   * Returns the canonical value shared by all options with the given name, type, description and
+   * explicit (or absent) default value, in projects with the same build option files. The value is
+   * resolved once, on first read, and all options then return the same instance.
+   */
+  SharedOptionValue sharedValueOf(
+      String optionName,
+      BuildOptionType type,
+      String description,
+      @Nullable BuildOptionValue defaultValue,
+      File projectDir,
+      ObjectFactory objects) {
+    var dirs = optionFileDirs(projectDir);
+    return sharedValues.computeIfAbsent(
+        new SharedOptionKey(optionName, type, description, defaultValue, dirs),
+        key -> {
+          var value = valueOf(optionName, dirs);
+          if (defaultValue != null) {
+            value = value.orElse(defaultValue);
+          }
+          var canonical = objects.property(BuildOptionValue.class);
+          canonical.set(tracked(optionName, value));
+          canonical.finalizeValueOnRead();
+          return new SharedOptionValue(canonical, defaultValue);
+        });
+  }
+
+  private Provider<BuildOptionValue> createValueChain(String optionName, List<File> dirs) {
+    // These lambdas must not capture any option: the value chain is reachable from the
+    // option's own value property, and the configuration cache cannot restore such
+    // circular references through lambda captures. Empty-value normalization for
+    // boolean options happens in BuildOption#asStringProvider instead.
+    return providers
+        .systemProperty(optionName)
+        .map(v -> new BuildOptionValue(v, BuildOptionValueSource.SYSTEM_PROPERTY))
+        .orElse(
+            providers
+                .gradleProperty(optionName)
+                .map(v -> new BuildOptionValue(v, BuildOptionValueSource.GRADLE_PROPERTY)))
+        .orElse(
+            providers
+                .environmentVariable(optionName)
+                .map(v -> new BuildOptionValue(v, BuildOptionValueSource.ENVIRONMENT_VARIABLE)))
+        .orElse(fromProfiles(optionName, dirs))
+        .orElse(
+            fromFiles(
+                optionName,
+                BuildOptionValueSource.LOCAL_BUILD_OPTIONS_FILE,
+                LOCAL_BUILD_OPTIONS_FILE,
+                dirs))
+        .orElse(
+            fromFiles(
+                optionName, BuildOptionValueSource.BUILD_OPTIONS_FILE, BUILD_OPTIONS_FILE, dirs));
+  }
+
+  /**
+   * Values of the option in active profiles: defined in local build option files, with the {@code
+   * profile} DSL or in build option files (in this order).
+   */
+  private Provider<BuildOptionValue> fromProfiles(String optionName, List<File> dirs) {
+    Provider<BuildOptionValue> value = providers.provider(() -> null);
+    var definedProfiles = profiles;
+    for (var profile : activeProfiles) {
+      var key = PROFILE_KEY_PREFIX + profile + "." + optionName;
+      value =
+          value
+              .orElse(
+                  fromFiles(key, BuildOptionValueSource.PROFILE, LOCAL_BUILD_OPTIONS_FILE, dirs)
+                      .map(v -> new BuildOptionValue(v.value(), v.source(), profile)))
+              .orElse(
+                  providers
+                      .provider(
+                          () ->
+                              definedProfiles
+                                  .getOrDefault(profile, Map.of())
+                                  .get(optionName))
+                      .map(v -> new BuildOptionValue(v, BuildOptionValueSource.PROFILE, profile)))
+              .orElse(
+                  fromFiles(key, BuildOptionValueSource.PROFILE, BUILD_OPTIONS_FILE, dirs)
+                      .map(v -> new BuildOptionValue(v.value(), v.source(), profile)));
+    }
+    return value;
+  }
+
+  /**
+   * Values of the option in build option files with the given name, in the given directories (the
+   * first one defining the option wins). The value's origin is the file's path relative to the
+   * root project directory.
+   */
+  private Provider<BuildOptionValue> fromFiles(
+      String optionName, BuildOptionValueSource source, String sourceFile, List<File> dirs) {
+    Provider<BuildOptionValue> value = null;
+    for (var dir : dirs) {
+      var fileValue = fromFile(optionName, source, sourceFile, dir);
+      value = value == null ? fileValue : value.orElse(fileValue);
+    }
+    return value;
+  }
+
+  private Provider<BuildOptionValue> fromFile(
+      String optionName, BuildOptionValueSource source, String sourceFile, File dir) {
+    var origin =
+        rootDirectory
+            .toPath()
+            .relativize(dir.toPath().resolve(sourceFile))
+            .toString()
+            .replace('\\', '/');
+    return providers
+        .of(
+            BuildOptionsPlugin.OptionFileValueSource.class,
+            valueSource -> {
+              var params = valueSource.getParameters();
+              params.getSourceFile().set(origin);
+              params.getFile().set(new File(dir, sourceFile));
+              params.getName().set(optionName);
+            })
+        .map(v -> new BuildOptionValue(v, source, origin));
+  }
+}
@@ -5,5 +5,8 @@ public enum BuildOptionType {
   BOOLEAN,
   INTEGER,
   DIRECTORY,
-  FILE
+  FILE,
+  PARALLELISM,
+  SIZE,
+  PATTERNS
 }
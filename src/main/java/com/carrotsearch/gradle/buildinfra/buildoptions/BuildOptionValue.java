@@ -1,8 +1,22 @@
 package com.carrotsearch.gradle.buildinfra.buildoptions;
 
-public record BuildOptionValue(String value, BuildOptionValueSource source) {
+import java.io.Serializable;
+import javax.annotation.Nullable;
+
+/**
+ * A value of a build option and its source. The origin further details the source, if needed (for
+ * example, the name of the profile that supplied the value). The value is {@code null} only for
+ * options pinned to no value by a replayed snapshot.
+ */
+public record BuildOptionValue(
+    @Nullable String value, BuildOptionValueSource source, @Nullable String origin)
+    implements Serializable {
+  public BuildOptionValue(@Nullable String value, BuildOptionValueSource source) {
+    this(value, source, null);
+  }
+
   @Override
   public String toString() {
-    return value;
+    return value == null ? "<no value>" : value;
   }
 }
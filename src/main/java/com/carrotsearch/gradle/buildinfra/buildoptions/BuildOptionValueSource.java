@@ -4,8 +4,10 @@ public enum BuildOptionValueSource {
   GRADLE_PROPERTY,
   SYSTEM_PROPERTY,
   ENVIRONMENT_VARIABLE,
+  PROFILE,
   EXPLICIT_VALUE,
   COMPUTED_VALUE,
   BUILD_OPTIONS_FILE,
-  LOCAL_BUILD_OPTIONS_FILE
+  LOCAL_BUILD_OPTIONS_FILE,
+  REPLAYED_SNAPSHOT
 }
@@ -0,0 +1,34 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+
+/**
+ * Writes a descriptor of all build options of a project (with resolved values). The root project
+ * consumes these descriptors to display options of all projects.
+ */
+@UntrackedTask(
+    because =
+        "Option values may come from system properties or environment variables, which aren't"
+            + " tracked as inputs.")
+public abstract class BuildOptionsDescriptorTask extends DefaultTask {
+  public static final String NAME = "buildOptionsDescriptor";
+
+  @Internal
+  public abstract SetProperty<BuildOption> getAllBuildOptions();
+
+  @OutputFile
+  public abstract RegularFileProperty getDescriptorFile();
+
+  @TaskAction
+  public void exec() {
+    OptionDescriptor.write(
+        getAllBuildOptions().get().stream().map(OptionDescriptor::of).toList(),
+        getDescriptorFile().get().getAsFile());
+  }
+}
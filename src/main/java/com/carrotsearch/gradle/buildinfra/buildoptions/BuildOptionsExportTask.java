@@ -0,0 +1,107 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import groovy.json.JsonOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.DisableCachingByDefault;
+
+/**
+ * Writes all build options (name, type, description, value, source, default value, project path
+ * and group) to a JSON file, for tools that need the options without running Gradle. The task's
+ * inputs are the resolved options, so it's up-to-date as long as none of them changes.
+ */
+@DisableCachingByDefault(because = "The export is cheap to regenerate.")
+public abstract class BuildOptionsExportTask extends DefaultTask {
+  public static final String NAME = "exportBuildOptions";
+  public static final String ALL_OPTIONS_NAME = "exportAllOptions";
+
+  private final OptionGroupingSpec groupingSpec = new OptionGroupingSpec();
+
+  /** Resolved options of this project. */
+  @Input
+  public abstract ListProperty<OptionDescriptor> getOptions();
+
+  /**
+   * Descriptor files of options declared in other projects (see {@link
+   * BuildOptionsDescriptorTask}).
+   */
+  @InputFiles
+  @PathSensitive(PathSensitivity.NONE)
+  public abstract ConfigurableFileCollection getOptionDescriptors();
+
+  @OutputFile
+  public abstract RegularFileProperty getOutputFile();
+
+  public BuildOptionsExportTask() {
+    setDescription("Exports build options and their values to a JSON file");
+    setGroup(BuildOptionsTask.BUILD_OPTIONS_TASK_GROUP);
+  }
+
+  /** Configures option groups (the first matching group is exported with each option). */
+  public void optionGroups(Action<OptionGroupingSpec> action) {
+    action.execute(groupingSpec);
+  }
+
+  /** Option group patterns, keyed by group description. */
+  @Input
+  public Map<String, String> getOptionGroupPatterns() {
+    var patterns = new LinkedHashMap<String, String>();
+    for (var group : groupingSpec.getOptionGroups()) {
+      patterns.putIfAbsent(group.description(), group.matcher().pattern());
+    }
+    return patterns;
+  }
+
+  @TaskAction
+  public void exec() {
+    var descriptors = new ArrayList<>(getOptions().get());
+    getOptionDescriptors().forEach(file -> descriptors.addAll(OptionDescriptor.read(file)));
+    descriptors.sort(
+        Comparator.comparing(OptionDescriptor::projectPath).thenComparing(OptionDescriptor::name));
+
+    var options = new ArrayList<Map<String, Object>>();
+    for (var descriptor : descriptors) {
+      var map = descriptor.toMap();
+      map.put("group", groupOf(descriptor.name()));
+      options.add(map);
+    }
+
+    var json = new LinkedHashMap<String, Object>();
+    json.put("options", options);
+
+    var file = getOutputFile().get().getAsFile().toPath();
+    try {
+      Files.createDirectories(file.getParent());
+      Files.writeString(
+          file, JsonOutput.prettyPrint(JsonOutput.toJson(json)), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new GradleException("Can't write build options to: " + file, e);
+    }
+  }
+
+  private String groupOf(String optionName) {
+    for (var group : groupingSpec.getOptionGroups()) {
+      if (group.matcher().matcher(optionName).matches()) {
+        return group.description();
+      }
+    }
+    return null;
+  }
+}
@@ -1,10 +1,29 @@
 package com.carrotsearch.gradle.buildinfra.buildoptions;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
 import org.gradle.api.Action;
+import org.gradle.api.GradleException;
 import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.NamedDomainObjectProvider;
+import org.gradle.api.Task;
+import org.gradle.api.Transformer;
 import org.gradle.api.file.Directory;
 import org.gradle.api.file.RegularFile;
+import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
 
 public abstract class BuildOptionsExtension {
   public abstract NamedDomainObjectContainer<BuildOption> getAllOptions();
@@ -19,7 +38,8 @@ public abstract class BuildOptionsExtension {
   }
 
   public boolean hasOption(String name) {
-    return getAllOptions().findByName(name) != null;
+    // Don't use findByName here, it would realize lazily registered options.
+    return getAllOptions().getNames().contains(name);
   }
 
   public Provider<String> getAt(String name) {
@@ -30,240 +50,838 @@ public abstract class BuildOptionsExtension {
     return optionValue(name);
   }
 
-  private Provider<String> newStringOption(
-      String name, String description, Action<BuildOption> spec) {
+  private BuildOptionSources sources;
+
+  @Inject
+  protected abstract ObjectFactory getObjects();
+
+  @Inject
+  protected abstract ProviderFactory getProviders();
+
+  void setSources(BuildOptionSources sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * Defines (or extends) an option profile: a named set of option values activated with {@code
+   * -PbuildOptions.profile=<name>}. Profile values take precedence over build option files, but not
+   * over system properties, gradle properties or environment variables. When the settings plugin
+   * is applied, profiles are shared by all projects.
+   */
+  public void profile(String name, Map<String, ?> values) {
+    sources.addProfile(name, values);
+  }
+
+  private final List<Pattern> forwardedToTests = new ArrayList<>();
+  private final List<Pattern> forwardedToTestsUntracked = new ArrayList<>();
+  private ForwardedTestOptions forwardedTestOptions;
+
+  /**
+   * Forwards options matching any of the given glob patterns ({@code tests.*}) to forked test JVMs
+   * as system properties. Options without a value aren't forwarded. The values are inputs of test
+   * tasks.
+   */
+  public void forwardToTests(String... patterns) {
+    for (var pattern : patterns) {
+      forwardedToTests.add(OptionGlobs.toPattern(pattern));
+    }
+  }
+
+  /**
+   * Forwards options matching any of the given glob patterns to forked test JVMs, but doesn't make
+   * them inputs of test tasks. Use it for options that don't affect test results (verbosity, output
+   * flags), so that changing them doesn't invalidate cached test results. These patterns take
+   * precedence over {@link #forwardToTests(String...)} patterns: an option matching both is not an
+   * input.
+   */
+  public void forwardToTestsUntracked(String... patterns) {
+    for (var pattern : patterns) {
+      forwardedToTestsUntracked.add(OptionGlobs.toPattern(pattern));
+    }
+  }
+
+  /** The JVM argument provider of options forwarded to test tasks. */
+  ForwardedTestOptions getForwardedTestOptions() {
+    if (forwardedTestOptions == null) {
+      forwardedTestOptions = getObjects().newInstance(ForwardedTestOptions.class);
+      forwardedTestOptions
+          .getTrackedOptions()
+          .set(
+              getProviders()
+                  .provider(() -> forwardedValues(forwardedToTests, forwardedToTestsUntracked)));
+      forwardedTestOptions
+          .getUntrackedOptions()
+          .set(
+              getProviders().provider(() -> forwardedValues(forwardedToTestsUntracked, List.of())));
+    }
+    return forwardedTestOptions;
+  }
+
+  private Map<String, String> forwardedValues(List<Pattern> included, List<Pattern> excluded) {
+    var values = new TreeMap<String, String>();
+    for (var option : matchingOptions(included, excluded)) {
+      var value = option.asStringProvider().getOrNull();
+      if (value != null) {
+        values.put(option.getName(), value);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Returns options with names matching any of the included patterns and none of the excluded ones,
+   * sorted by name. Only matching lazily registered options are realized.
+   */
+  List<BuildOption> matchingOptions(List<Pattern> included, List<Pattern> excluded) {
+    var options = new ArrayList<BuildOption>();
+    if (included.isEmpty()) {
+      return options;
+    }
+    for (var name : new TreeSet<>(getAllOptions().getNames())) {
+      if (matchesAny(included, name) && !matchesAny(excluded, name)) {
+        options.add(getAllOptions().getByName(name));
+      }
+    }
+    return options;
+  }
+
+  private static boolean matchesAny(List<Pattern> patterns, String name) {
+    return patterns.stream().anyMatch(p -> p.matcher(name).matches());
+  }
+
+  /**
+   * Returns a lazy, stable digest (SHA-256) of names, types and resolved values of options matching
+   * any of the given glob patterns ({@code tests.*}). Attach it as a single task input instead of
+   * declaring each option separately; options not matching the patterns don't affect it.
+   */
+  public Provider<String> digest(String... patterns) {
+    return digestOf(Arrays.stream(patterns).map(OptionGlobs::toPattern).toList());
+  }
+
+  /**
+   * Returns a lazy, stable digest of options in the given group (see {@link #digest(String...)}).
+   */
+  public Provider<String> digest(OptionGroup group) {
+    return digestOf(List.of(group.matcher()));
+  }
+
+  private Provider<String> digestOf(List<Pattern> patterns) {
+    return getProviders()
+        .provider(
+            () -> {
+              var md = Digests.sha256();
+              for (var option : matchingOptions(patterns, List.of())) {
+                Digests.update(md, option.getName());
+                Digests.update(md, option.getType().name());
+                var value = option.asResolvedStringProvider().getOrNull();
+                // Distinguish absent values from empty ones.
+                md.update(value == null ? (byte) 0 : (byte) 1);
+                if (value != null) {
+                  Digests.update(md, value);
+                }
+              }
+              return Digests.hex(md);
+            });
+  }
+
+  private final List<TaskPruning.Rule> taskSwitches = new ArrayList<>();
+
+  /**
+   * Removes tasks of this project with names matching any of the given glob patterns ({@code
+   * javadoc*}) from the task graph when the boolean option is {@code true}. Unlike {@code onlyIf}
+   * conditions, removed tasks (and dependencies no other task needs) are never scheduled.
+   */
+  public void pruneTasks(String optionName, String... taskNamePatterns) {
+    taskSwitches.add(
+        new TaskPruning.Rule(
+            optionName,
+            Arrays.stream(taskNamePatterns).map(OptionGlobs::toPattern).toList(),
+            List.of()));
+  }
+
+  /**
+   * Removes tasks of this project of any of the given types from the task graph when the boolean
+   * option is {@code true} (see {@link #pruneTasks(String, String...)}).
+   */
+  @SafeVarargs
+  public final void pruneTasks(String optionName, Class<? extends Task>... taskTypes) {
+    // Elements are copied one by one: passing the generic array on is what -Xlint:varargs flags.
+    var types = new ArrayList<Class<? extends Task>>();
+    for (var type : taskTypes) {
+      types.add(type);
+    }
+    taskSwitches.add(new TaskPruning.Rule(optionName, List.of(), List.copyOf(types)));
+  }
+
+  List<TaskPruning.Rule> getTaskSwitches() {
+    return taskSwitches;
+  }
+
+  private Runnable testSharding;
+
+  void setTestSharding(Runnable testSharding) {
+    this.testSharding = testSharding;
+  }
+
+  /**
+   * Adds test shard options ({@value TestSharding#SHARD_INDEX_OPTION}, {@value
+   * TestSharding#SHARD_COUNT_OPTION}) and makes every {@code Test} task of this project run only
+   * the test classes of the selected shard (see {@link TestSharding}).
+   */
+  public void shardTests() {
+    testSharding.run();
+  }
+
+  /**
+   * Creates a new option. The default value is either explicit (a constant), computed (a provider)
+   * or absent (both arguments are {@code null}).
+   */
+  private BuildOption newOption(
+      String name,
+      String description,
+      BuildOptionType type,
+      @Nullable Function<BuildOption, String> explicitDefault,
+      @Nullable Function<BuildOption, Provider<String>> computedDefault) {
     return getAllOptions()
         .create(
+            name, optionSpec(name, description, type, explicitDefault, computedDefault, null));
+  }
+
+  /**
+   * Registers a new option lazily: it is created and wired to its value sources only when
+   * something queries it.
+   */
+  private NamedDomainObjectProvider<BuildOption> registerOption(
+      String name,
+      String description,
+      BuildOptionType type,
+      @Nullable Function<BuildOption, String> explicitDefault,
+      @Nullable Function<BuildOption, Provider<String>> computedDefault) {
+    return getAllOptions()
+        .register(
+            name, optionSpec(name, description, type, explicitDefault, computedDefault, null));
+  }
+
+  /**
+   * @param computedOrigin Where the computed default value comes from (for example, the dependency
+   *     chain of derived options), shown in the option report.
+   */
+  private Action<BuildOption> optionSpec(
+      String name,
+      String description,
+      BuildOptionType type,
+      @Nullable Function<BuildOption, String> explicitDefault,
+      @Nullable Function<BuildOption, Provider<String>> computedDefault,
+      @Nullable String computedOrigin) {
+    return opt -> {
+      opt.getDefaultValue().finalizeValueOnRead();
+      opt.setDescription(description);
+      opt.setType(type);
+
+      BuildOptionValue defaultValue = null;
+      if (explicitDefault != null) {
+        defaultValue =
+            new BuildOptionValue(explicitDefault.apply(opt), BuildOptionValueSource.EXPLICIT_VALUE);
+        opt.getDefaultValue().set(defaultValue);
+      }
+      if (computedDefault != null) {
+        opt.getDefaultValue()
+            .set(
+                computedDefault
+                    .apply(opt)
+                    .map(
+                        value ->
+                            new BuildOptionValue(
+                                value, BuildOptionValueSource.COMPUTED_VALUE, computedOrigin)));
+      } else if (sources.isSharingIdenticalOptions()) {
+        // Options without a computed default can share one canonical value with identical options
+        // declared in other projects.
+        var shared =
+            sources.sharedValueOf(
+                name,
+                type,
+                description,
+                defaultValue,
+                opt.getProjectDirectory().getAsFile(),
+                getObjects());
+        if (shared.defaultValue() != null) {
+          opt.getDefaultValue().set(shared.defaultValue());
+        }
+        opt.getValue().convention(shared.value());
+        return;
+      }
+
+      // The option's own value chain, only created for options that don't share a value.
+      opt.getValue()
+          .convention(
+              sources.tracked(
+                  name,
+                  sources
+                      .valueOf(opt.getProjectPath(), opt.getProjectDirectory().getAsFile(), name)
+                      .orElse(opt.getDefaultValue())));
+    };
+  }
+
+  /** Dependencies of derived options, by option name. */
+  private final Map<String, List<String>> derivedDependencies = new LinkedHashMap<>();
+
+  /**
+   * Lazily registered option whose default value is derived from the values of other options of
+   * this project (declared before or after this one), for example:
+   *
+   * <pre>
+   * buildOptions.registerDerivedOption("tests.heapsize", "Test JVM heap.", BuildOptionType.SIZE,
+   *     ["tests.jvms"]) { values -> (8192 / values["tests.jvms"].toInteger()) + "m" }
+   * </pre>
+   *
+   * <p>The derivation receives resolved (string) values of its dependencies (options without a
+   * value are absent from the map) and is only evaluated when the option's value is read; a {@code
+   * null} result means no value. Like any other default value, a derived value can be overridden.
+   *
+   * @throws GradleException if the option's dependencies form a cycle.
+   */
+  public Provider<String> registerDerivedOption(
+      String name,
+      String description,
+      BuildOptionType type,
+      List<String> dependsOn,
+      Transformer<?, Map<String, String>> derivation) {
+    addDerivedDependencies(name, dependsOn);
+    return getAllOptions()
+        .register(
             name,
-            opt -> {
-              opt.getDefaultValue().finalizeValueOnRead();
-              opt.setDescription(description);
-              opt.setType(BuildOptionType.STRING);
-              spec.execute(opt);
-            })
-        .asStringProvider();
+            opt ->
+                optionSpec(
+                        name,
+                        description,
+                        type,
+                        null,
+                        o -> derivedValue(name, dependsOn, derivation),
+                        dependencyChain(name))
+                    .execute(opt))
+        .flatMap(BuildOption::asStringProvider);
+  }
+
+  /** Lazily registered string option derived from other options' values. */
+  public Provider<String> registerDerivedOption(
+      String name,
+      String description,
+      List<String> dependsOn,
+      Transformer<?, Map<String, String>> derivation) {
+    return registerDerivedOption(
+        name, description, BuildOptionType.STRING, dependsOn, derivation);
+  }
+
+  private void addDerivedDependencies(String name, List<String> dependsOn) {
+    derivedDependencies.put(name, List.copyOf(dependsOn));
+    var cycle = findCycle(name, name, new ArrayList<>(List.of(name)));
+    if (cycle != null) {
+      derivedDependencies.remove(name);
+      throw new GradleException(
+          "Derived build option '"
+              + name
+              + "' has a dependency cycle: "
+              + String.join(" -> ", cycle));
+    }
+  }
+
+  /** Returns a dependency path from {@code current} back to {@code start}, if there is one. */
+  @Nullable
+  private List<String> findCycle(String start, String current, List<String> path) {
+    for (var dependency : derivedDependencies.getOrDefault(current, List.of())) {
+      if (path.contains(dependency)) {
+        if (dependency.equals(start)) {
+          path.add(dependency);
+          return path;
+        }
+        continue;
+      }
+      path.add(dependency);
+      var cycle = findCycle(start, dependency, path);
+      if (cycle != null) {
+        return cycle;
+      }
+      path.removeLast();
+    }
+    return null;
+  }
+
+  /**
+   * Describes the dependencies of a derived option, including dependencies of derived dependencies,
+   * for example {@code tests.jvms [ci, cpus]}.
+   */
+  private String dependencyChain(String name) {
+    var chain = new ArrayList<String>();
+    for (var dependency : derivedDependencies.getOrDefault(name, List.of())) {
+      chain.add(
+          derivedDependencies.containsKey(dependency)
+              ? dependency + " [" + dependencyChain(dependency) + "]"
+              : dependency);
+    }
+    return String.join(", ", chain);
+  }
+
+  private Provider<String> derivedValue(
+      String name, List<String> dependsOn, Transformer<?, Map<String, String>> derivation) {
+    // Dependencies are looked up when the derived option is realized, so they can be declared in
+    // any order (and unused options are never realized).
+    Provider<Map<String, String>> values = getProviders().provider(LinkedHashMap::new);
+    for (var dependency : dependsOn) {
+      if (!hasOption(dependency)) {
+        throw new GradleException(
+            "Derived build option '" + name + "' depends on an unknown option: " + dependency);
+      }
+      var value =
+          getAllOptions()
+              .named(dependency)
+              .flatMap(BuildOption::asResolvedStringProvider)
+              .map(List::of)
+              .orElse(List.of());
+      values =
+          values.zip(
+              value,
+              (map, v) -> {
+                if (!v.isEmpty()) {
+                  map.put(dependency, v.getFirst());
+                }
+                return map;
+              });
+    }
+    return values.map(
+        map -> {
+          var result = derivation.transform(Collections.unmodifiableMap(map));
+          return result == null ? null : result.toString();
+        });
   }
 
   /** Build option with the default value. */
   public Provider<String> addOption(String name, String description, String defaultValue) {
-    return newStringOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(new BuildOptionValue(defaultValue, BuildOptionValueSource.EXPLICIT_VALUE));
-        });
+    return newOption(name, description, BuildOptionType.STRING, opt -> defaultValue, null)
+        .asStringProvider();
   }
 
   /** Build option with some dynamically computed value. */
   public Provider<String> addOption(
       String name, String description, Provider<String> defaultValueProvider) {
-    return newStringOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  defaultValueProvider.map(
-                      value -> new BuildOptionValue(value, BuildOptionValueSource.COMPUTED_VALUE)));
-        });
+    return newOption(name, description, BuildOptionType.STRING, null, opt -> defaultValueProvider)
+        .asStringProvider();
   }
 
   /** Build option without any default value. */
   public Provider<String> addOption(String name, String description) {
-    return newStringOption(name, description, opt -> {});
+    return newOption(name, description, BuildOptionType.STRING, null, null).asStringProvider();
   }
 
-  private Provider<Boolean> newBooleanOption(
-      String name, String description, Action<BuildOption> spec) {
-    return getAllOptions()
-        .create(
+  /**
+   * Build option with an expensive, dynamically computed value that is cached on disk (in the root
+   * project's {@code .gradle} directory) and only recomputed when any of the declared inputs
+   * changes.
+   */
+  public Provider<String> addCachedOption(
+      String name, String description, Action<? super CachedOptionSpec> spec) {
+    var cachedSpec = getObjects().newInstance(CachedOptionSpec.class);
+    spec.execute(cachedSpec);
+    return newOption(
             name,
-            opt -> {
-              opt.getDefaultValue().finalizeValueOnRead();
-              opt.setDescription(description);
-              opt.setType(BuildOptionType.BOOLEAN);
-              spec.execute(opt);
-            })
-        .asBooleanProvider();
+            description,
+            BuildOptionType.STRING,
+            null,
+            opt ->
+                CachedOptionValues.cached(
+                    getProviders(),
+                    new File(sources.getRootDirectory(), CachedOptionValues.CACHE_DIR),
+                    opt.getProjectPath(),
+                    name,
+                    cachedSpec))
+        .asStringProvider();
   }
 
   /** Build option with the default value. */
   public Provider<Boolean> addBooleanOption(String name, String description, boolean defaultValue) {
-    return newBooleanOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  new BuildOptionValue(
-                      Boolean.toString(defaultValue), BuildOptionValueSource.EXPLICIT_VALUE));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.BOOLEAN,
+            opt -> Boolean.toString(defaultValue),
+            null)
+        .asBooleanProvider();
   }
 
   /** Build option with some dynamically computed value. */
   public Provider<Boolean> addBooleanOption(
       String name, String description, Provider<Boolean> defaultValueProvider) {
-    return newBooleanOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  defaultValueProvider.map(
-                      value ->
-                          new BuildOptionValue(
-                              Boolean.toString(value), BuildOptionValueSource.COMPUTED_VALUE)));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.BOOLEAN,
+            null,
+            opt -> defaultValueProvider.map(value -> Boolean.toString(value)))
+        .asBooleanProvider();
   }
 
   /** Build option without any default value. */
   public Provider<Boolean> addBooleanOption(String name, String description) {
-    return newBooleanOption(name, description, opt -> {});
-  }
-
-  private Provider<Integer> newIntOption(
-      String name, String description, Action<BuildOption> spec) {
-    return getAllOptions()
-        .create(
-            name,
-            opt -> {
-              opt.getDefaultValue().finalizeValueOnRead();
-              opt.setDescription(description);
-              opt.setType(BuildOptionType.INTEGER);
-              spec.execute(opt);
-            })
-        .asIntProvider();
+    return newOption(name, description, BuildOptionType.BOOLEAN, null, null).asBooleanProvider();
   }
 
   /** Build option with the default value. */
   public Provider<Integer> addIntOption(String name, String description, int defaultValue) {
-    return newIntOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  new BuildOptionValue(
-                      Integer.toString(defaultValue), BuildOptionValueSource.EXPLICIT_VALUE));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.INTEGER,
+            opt -> Integer.toString(defaultValue),
+            null)
+        .asIntProvider();
   }
 
   /** Build option with some dynamically computed value. */
   public Provider<Integer> addIntOption(
       String name, String description, Provider<Integer> defaultValueProvider) {
-    return newIntOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  defaultValueProvider.map(
-                      value ->
-                          new BuildOptionValue(
-                              Integer.toString(value), BuildOptionValueSource.COMPUTED_VALUE)));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.INTEGER,
+            null,
+            opt -> defaultValueProvider.map(value -> Integer.toString(value)))
+        .asIntProvider();
   }
 
   /** Build option without any default value. */
   public Provider<Integer> addIntOption(String name, String description) {
-    return newIntOption(name, description, opt -> {});
+    return newOption(name, description, BuildOptionType.INTEGER, null, null).asIntProvider();
   }
 
-  private Provider<Directory> newDirOption(
-      String name, String description, Action<BuildOption> spec) {
-    return getAllOptions()
-        .create(
-            name,
-            opt -> {
-              opt.getDefaultValue().finalizeValueOnRead();
-              opt.setDescription(description);
-              opt.setType(BuildOptionType.DIRECTORY);
-              spec.execute(opt);
-            })
-        .asDirProvider();
+  /**
+   * Build option with the default value: the number of parallel workers, either an integer or an
+   * expression relative to the number of usable cores, for example {@code 0.5C} or {@code
+   * cores-1}. Overridden values can use the same expressions.
+   */
+  public Provider<Integer> addParallelismOption(
+      String name, String description, String defaultValue) {
+    return newOption(name, description, BuildOptionType.PARALLELISM, opt -> defaultValue, null)
+        .asParallelismProvider();
+  }
+
+  /** Build option with some dynamically computed value (an integer or a parallelism expression). */
+  public Provider<Integer> addParallelismOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return newOption(
+            name, description, BuildOptionType.PARALLELISM, null, opt -> defaultValueProvider)
+        .asParallelismProvider();
+  }
+
+  /** Build option without any default value. */
+  public Provider<Integer> addParallelismOption(String name, String description) {
+    return newOption(name, description, BuildOptionType.PARALLELISM, null, null)
+        .asParallelismProvider();
+  }
+
+  /**
+   * Build option with the default value: a size in bytes, with an optional unit suffix ({@code
+   * 512m}, {@code 2g}) or relative to usable (physical or container) memory ({@code 25%}).
+   * Overridden values can use the same notation. Use {@link MemorySize#format(long)} to pass the
+   * value to JVM options such as {@code -Xmx}.
+   */
+  public Provider<Long> addSizeOption(String name, String description, String defaultValue) {
+    return newOption(name, description, BuildOptionType.SIZE, opt -> defaultValue, null)
+        .asSizeProvider();
+  }
+
+  /** Build option with some dynamically computed value (a size or a percentage of memory). */
+  public Provider<Long> addSizeOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return newOption(name, description, BuildOptionType.SIZE, null, opt -> defaultValueProvider)
+        .asSizeProvider();
+  }
+
+  /** Build option without any default value. */
+  public Provider<Long> addSizeOption(String name, String description) {
+    return newOption(name, description, BuildOptionType.SIZE, null, null).asSizeProvider();
+  }
+
+  /** Build option with the default value (comma-separated glob patterns). */
+  public Provider<GlobMatcher> addPatternsOption(
+      String name, String description, String defaultValue) {
+    return newOption(name, description, BuildOptionType.PATTERNS, opt -> defaultValue, null)
+        .asPatternsProvider();
+  }
+
+  /** Build option with some dynamically computed value (comma-separated glob patterns). */
+  public Provider<GlobMatcher> addPatternsOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return newOption(
+            name, description, BuildOptionType.PATTERNS, null, opt -> defaultValueProvider)
+        .asPatternsProvider();
+  }
+
+  /** Build option without any default value. */
+  public Provider<GlobMatcher> addPatternsOption(String name, String description) {
+    return newOption(name, description, BuildOptionType.PATTERNS, null, null).asPatternsProvider();
   }
 
   /** Build option without any default value. */
   public Provider<Directory> addDirOption(String name, String description) {
-    return newDirOption(name, description, opt -> {});
+    return newOption(name, description, BuildOptionType.DIRECTORY, null, null).asDirProvider();
   }
 
   /** Build option with the default value. */
   public Provider<Directory> addDirOption(String name, String description, Directory defaultValue) {
-    return newDirOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  new BuildOptionValue(
-                      opt.relativePath(defaultValue), BuildOptionValueSource.EXPLICIT_VALUE));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.DIRECTORY,
+            opt -> opt.relativePath(defaultValue),
+            null)
+        .asDirProvider();
   }
 
   /** Build option with some dynamically computed value. */
   public Provider<Directory> addDirOption(
       String name, String description, Provider<Directory> defaultValueProvider) {
-    return newDirOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  defaultValueProvider.map(
-                      value ->
-                          new BuildOptionValue(
-                              opt.relativePath(value), BuildOptionValueSource.COMPUTED_VALUE)));
-        });
-  }
-
-  private Provider<RegularFile> newFileOption(
-      String name, String description, Action<BuildOption> spec) {
-    return getAllOptions()
-        .create(
+    return newOption(
             name,
-            opt -> {
-              opt.getDefaultValue().finalizeValueOnRead();
-              opt.setDescription(description);
-              opt.setType(BuildOptionType.FILE);
-              spec.execute(opt);
-            })
-        .asFileProvider();
+            description,
+            BuildOptionType.DIRECTORY,
+            null,
+            opt -> defaultValueProvider.map(opt::relativePath))
+        .asDirProvider();
   }
 
   /** Build option without any default value. */
   public Provider<RegularFile> addFileOption(String name, String description) {
-    return newFileOption(name, description, opt -> {});
+    return newOption(name, description, BuildOptionType.FILE, null, null).asFileProvider();
   }
 
   /** Build option with the default value. */
   public Provider<RegularFile> addFileOption(
       String name, String description, RegularFile defaultValue) {
-    return newFileOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  new BuildOptionValue(
-                      opt.relativePath(defaultValue), BuildOptionValueSource.EXPLICIT_VALUE));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.FILE,
+            opt -> opt.relativePath(defaultValue),
+            null)
+        .asFileProvider();
   }
 
   /** Build option with some dynamically computed value. */
   public Provider<RegularFile> addFileOption(
       String name, String description, Provider<RegularFile> defaultValueProvider) {
-    return newFileOption(
-        name,
-        description,
-        opt -> {
-          opt.getDefaultValue()
-              .set(
-                  defaultValueProvider.map(
-                      value ->
-                          new BuildOptionValue(
-                              opt.relativePath(value), BuildOptionValueSource.COMPUTED_VALUE)));
-        });
+    return newOption(
+            name,
+            description,
+            BuildOptionType.FILE,
+            null,
+            opt -> defaultValueProvider.map(opt::relativePath))
+        .asFileProvider();
+  }
+
+  /** Lazily registered build option with the default value. */
+  public Provider<String> registerOption(String name, String description, String defaultValue) {
+    return registerOption(name, description, BuildOptionType.STRING, opt -> defaultValue, null)
+        .flatMap(BuildOption::asStringProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<String> registerOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return registerOption(
+            name, description, BuildOptionType.STRING, null, opt -> defaultValueProvider)
+        .flatMap(BuildOption::asStringProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<String> registerOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.STRING, null, null)
+        .flatMap(BuildOption::asStringProvider);
+  }
+
+  /** Lazily registered build option with the default value. */
+  public Provider<Boolean> registerBooleanOption(
+      String name, String description, boolean defaultValue) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.BOOLEAN,
+            opt -> Boolean.toString(defaultValue),
+            null)
+        .flatMap(BuildOption::asBooleanProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<Boolean> registerBooleanOption(
+      String name, String description, Provider<Boolean> defaultValueProvider) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.BOOLEAN,
+            null,
+            opt -> defaultValueProvider.map(value -> Boolean.toString(value)))
+        .flatMap(BuildOption::asBooleanProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<Boolean> registerBooleanOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.BOOLEAN, null, null)
+        .flatMap(BuildOption::asBooleanProvider);
+  }
+
+  /** Lazily registered build option with the default value. */
+  public Provider<Integer> registerIntOption(String name, String description, int defaultValue) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.INTEGER,
+            opt -> Integer.toString(defaultValue),
+            null)
+        .flatMap(BuildOption::asIntProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<Integer> registerIntOption(
+      String name, String description, Provider<Integer> defaultValueProvider) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.INTEGER,
+            null,
+            opt -> defaultValueProvider.map(value -> Integer.toString(value)))
+        .flatMap(BuildOption::asIntProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<Integer> registerIntOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.INTEGER, null, null)
+        .flatMap(BuildOption::asIntProvider);
+  }
+
+  /**
+   * Lazily registered build option with the default value (an integer or a parallelism expression,
+   * see {@link #addParallelismOption(String, String, String)}).
+   */
+  public Provider<Integer> registerParallelismOption(
+      String name, String description, String defaultValue) {
+    return registerOption(
+            name, description, BuildOptionType.PARALLELISM, opt -> defaultValue, null)
+        .flatMap(BuildOption::asParallelismProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<Integer> registerParallelismOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return registerOption(
+            name, description, BuildOptionType.PARALLELISM, null, opt -> defaultValueProvider)
+        .flatMap(BuildOption::asParallelismProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<Integer> registerParallelismOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.PARALLELISM, null, null)
+        .flatMap(BuildOption::asParallelismProvider);
+  }
+
+  /**
+   * Lazily registered build option with the default value (a size or a percentage of memory, see
+   * {@link #addSizeOption(String, String, String)}).
+   */
+  public Provider<Long> registerSizeOption(String name, String description, String defaultValue) {
+    return registerOption(name, description, BuildOptionType.SIZE, opt -> defaultValue, null)
+        .flatMap(BuildOption::asSizeProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<Long> registerSizeOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return registerOption(
+            name, description, BuildOptionType.SIZE, null, opt -> defaultValueProvider)
+        .flatMap(BuildOption::asSizeProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<Long> registerSizeOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.SIZE, null, null)
+        .flatMap(BuildOption::asSizeProvider);
+  }
+
+  /** Lazily registered build option with the default value (comma-separated glob patterns). */
+  public Provider<GlobMatcher> registerPatternsOption(
+      String name, String description, String defaultValue) {
+    return registerOption(name, description, BuildOptionType.PATTERNS, opt -> defaultValue, null)
+        .flatMap(BuildOption::asPatternsProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<GlobMatcher> registerPatternsOption(
+      String name, String description, Provider<String> defaultValueProvider) {
+    return registerOption(
+            name, description, BuildOptionType.PATTERNS, null, opt -> defaultValueProvider)
+        .flatMap(BuildOption::asPatternsProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<GlobMatcher> registerPatternsOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.PATTERNS, null, null)
+        .flatMap(BuildOption::asPatternsProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<Directory> registerDirOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.DIRECTORY, null, null)
+        .flatMap(BuildOption::asDirProvider);
+  }
+
+  /** Lazily registered build option with the default value. */
+  public Provider<Directory> registerDirOption(
+      String name, String description, Directory defaultValue) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.DIRECTORY,
+            opt -> opt.relativePath(defaultValue),
+            null)
+        .flatMap(BuildOption::asDirProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<Directory> registerDirOption(
+      String name, String description, Provider<Directory> defaultValueProvider) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.DIRECTORY,
+            null,
+            opt -> defaultValueProvider.map(opt::relativePath))
+        .flatMap(BuildOption::asDirProvider);
+  }
+
+  /** Lazily registered build option without any default value. */
+  public Provider<RegularFile> registerFileOption(String name, String description) {
+    return registerOption(name, description, BuildOptionType.FILE, null, null)
+        .flatMap(BuildOption::asFileProvider);
+  }
+
+  /** Lazily registered build option with the default value. */
+  public Provider<RegularFile> registerFileOption(
+      String name, String description, RegularFile defaultValue) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.FILE,
+            opt -> opt.relativePath(defaultValue),
+            null)
+        .flatMap(BuildOption::asFileProvider);
+  }
+
+  /** Lazily registered build option with some dynamically computed value. */
+  public Provider<RegularFile> registerFileOption(
+      String name, String description, Provider<RegularFile> defaultValueProvider) {
+    return registerOption(
+            name,
+            description,
+            BuildOptionType.FILE,
+            null,
+            opt -> defaultValueProvider.map(opt::relativePath))
+        .flatMap(BuildOption::asFileProvider);
   }
 }
@@ -1,22 +1,29 @@
 package com.carrotsearch.gradle.buildinfra.buildoptions;
 
-import java.io.IOException;
-import java.nio.file.Files;
+import java.io.File;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Properties;
-import java.util.TreeMap;
 import javax.annotation.Nullable;
+import javax.inject.Inject;
 import org.gradle.api.Describable;
-import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.attributes.Usage;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.flow.BuildWorkResult;
+import org.gradle.api.flow.FlowAction;
+import org.gradle.api.flow.FlowParameters;
+import org.gradle.api.flow.FlowProviders;
+import org.gradle.api.flow.FlowScope;
+import org.gradle.api.invocation.Gradle;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.provider.ValueSource;
 import org.gradle.api.provider.ValueSourceParameters;
-import org.jetbrains.annotations.NotNull;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.testing.Test;
 
 /**
  * A plugin providing {@code buildOptions} extension with overrideable key-value options that may
@@ -27,13 +34,30 @@ public class BuildOptionsPlugin implements Plugin<Project> {
   public static final String LOCAL_BUILD_OPTIONS_FILE = "build-options.local.properties";
   public static final String OPTIONS_EXTENSION_NAME = "buildOptions";
   private static final String ALL_BUILD_OPTIONS_TASK_NAME = "allOptions";
+  private static final String OPTION_DESCRIPTORS_USAGE = "build-options-descriptors";
+  private static final String OPTION_DESCRIPTOR_ELEMENTS_CONFIGURATION =
+      "buildOptionsDescriptorElements";
+  private static final String OPTION_DESCRIPTORS_CONFIGURATION = "buildOptionsDescriptors";
+
+  private final FlowScope flowScope;
+  private final FlowProviders flowProviders;
+
+  @Inject
+  public BuildOptionsPlugin(FlowScope flowScope, FlowProviders flowProviders) {
+    this.flowScope = flowScope;
+    this.flowProviders = flowProviders;
+  }
 
   public abstract static class OptionFileValueSource
       implements ValueSource<String, OptionFileValueSource.Parameters>, Describable {
 
     @Nullable
     public String obtain() {
-      return getParameters().getValue().getOrNull();
+      // The file is read here rather than at configuration time, so that the configuration cache
+      // only depends on values of options that are actually queried, not on the whole file.
+      var params = getParameters();
+      var file = params.getFile().get().getAsFile().toPath();
+      return OptionFiles.read(file).get(params.getName().get());
     }
 
     public String getDisplayName() {
@@ -47,126 +71,277 @@ public class BuildOptionsPlugin implements Plugin<Project> {
     public abstract static class Parameters implements ValueSourceParameters {
       abstract Property<String> getSourceFile();
 
-      abstract Property<String> getValue();
+      abstract RegularFileProperty getFile();
 
       abstract Property<String> getName();
     }
   }
 
+  public abstract static class ReplayedValueSource
+      implements ValueSource<OptionSnapshots.Snapshot, ReplayedValueSource.Parameters>,
+          Describable {
+
+    public OptionSnapshots.Snapshot obtain() {
+      return OptionSnapshots.read(getParameters().getSnapshotFile().get().getAsFile().toPath());
+    }
+
+    public String getDisplayName() {
+      return String.format(
+          Locale.ROOT,
+          "replayed option snapshot %s",
+          getParameters().getSnapshotFile().get().getAsFile());
+    }
+
+    public abstract static class Parameters implements ValueSourceParameters {
+      abstract RegularFileProperty getSnapshotFile();
+    }
+  }
+
+  /** Clears option files parsed during the build (see {@link OptionFiles}) when it finishes. */
+  public static class OptionFilesCleanup implements FlowAction<OptionFilesCleanup.Parameters> {
+    public interface Parameters extends FlowParameters {
+      /** Only declared so that the action runs once the build's work is done. */
+      @Input
+      Property<BuildWorkResult> getBuildResult();
+    }
+
+    @Override
+    public void execute(Parameters parameters) {
+      OptionFiles.clear();
+    }
+  }
+
+  /**
+   * Registers {@link OptionFilesCleanup} to run at the end of every build, including builds that
+   * reuse the configuration cache.
+   */
+  static void clearOptionFilesAfterBuild(FlowScope flowScope, FlowProviders flowProviders) {
+    flowScope.always(
+        OptionFilesCleanup.class,
+        spec -> spec.getParameters().getBuildResult().set(flowProviders.getBuildWorkResult()));
+  }
+
   @Override
   public void apply(Project project) {
     BuildOptionsExtension options = project.getObjects().newInstance(BuildOptionsExtension.class);
     project.getExtensions().add(OPTIONS_EXTENSION_NAME, options);
 
-    Map<String, String> buildOptionsFile = readBuildOptions(project, BUILD_OPTIONS_FILE);
-    Map<String, String> localBuildOptionsFile = readBuildOptions(project, LOCAL_BUILD_OPTIONS_FILE);
-    options
-        .getAllOptions()
-        .whenObjectAdded(
-            option -> {
-              var providers = project.getProviders();
-              var optionName = option.getName();
-              // These lambdas must not capture 'option': the value chain is reachable from the
-              // option's own value property, and the configuration cache cannot restore such
-              // circular references through lambda captures. Empty-value normalization for
-              // boolean options happens in BuildOption#asBooleanProvider instead.
-              option
-                  .getValue()
-                  .convention(
-                      providers
-                          .systemProperty(optionName)
-                          .map(
-                              v ->
-                                  new BuildOptionValue(v, BuildOptionValueSource.SYSTEM_PROPERTY))
-                          .orElse(
-                              providers
-                                  .gradleProperty(optionName)
-                                  .map(
-                                      v ->
-                                          new BuildOptionValue(
-                                              v, BuildOptionValueSource.GRADLE_PROPERTY)))
-                          .orElse(
-                              providers
-                                  .environmentVariable(optionName)
-                                  .map(
-                                      v ->
-                                          new BuildOptionValue(
-                                              v, BuildOptionValueSource.ENVIRONMENT_VARIABLE)))
-                          .orElse(
-                              fromLocalFile(
-                                  providers,
-                                  optionName,
-                                  localBuildOptionsFile,
-                                  BuildOptionValueSource.LOCAL_BUILD_OPTIONS_FILE,
-                                  LOCAL_BUILD_OPTIONS_FILE))
-                          .orElse(
-                              fromLocalFile(
-                                  providers,
-                                  optionName,
-                                  buildOptionsFile,
-                                  BuildOptionValueSource.BUILD_OPTIONS_FILE,
-                                  BUILD_OPTIONS_FILE))
-                          .orElse(option.getDefaultValue()));
-            });
+    // Use the build-wide option sources, if the settings plugin provides them.
+    var sources = project.getGradle().getExtensions().findByType(BuildOptionSources.class);
+    if (sources == null) {
+      Provider<BuildOptionsUsageService> usage = null;
+      if (isUsageTrackingEnabled(project.getProviders())) {
+        usage = BuildOptionsUsageService.startTracking(project.getGradle(), project.getRootDir());
+      }
+
+      sources =
+          new BuildOptionSources(
+              project.getProviders(),
+              project.getRootDir(),
+              project.getProviders().provider(() -> false),
+              usage,
+              timingService(project.getGradle(), project.getProviders(), project.getRootDir()));
+
+      // Without the settings plugin, every project registers its own (idempotent) cleanup.
+      clearOptionFilesAfterBuild(flowScope, flowProviders);
+    }
+    options.setSources(sources);
+    options.setTestSharding(() -> TestSharding.apply(project, options));
+
+    // Forward selected options to test JVMs.
+    project
+        .getTasks()
+        .withType(Test.class)
+        .configureEach(
+            test -> test.getJvmArgumentProviders().add(options.getForwardedTestOptions()));
 
     // Add tasks.
     var buildOptionsTask =
         project.getTasks().register(BuildOptionsTask.NAME, BuildOptionsTask.class);
 
+    // Remove tasks selected by task switches once all projects have registered their tasks.
+    project
+        .getGradle()
+        .projectsEvaluated(
+            gradle -> {
+              var rules = options.getTaskSwitches();
+              if (!rules.isEmpty()) {
+                var switches = TaskPruning.exclude(project, options, rules);
+                buildOptionsTask.configure(task -> task.getTaskSwitches().set(switches));
+              }
+            });
+
+    // Publish a descriptor of this project's options, so that the root project can display them
+    // without reaching into this project's model.
+    var descriptorTask =
+        project
+            .getTasks()
+            .register(
+                BuildOptionsDescriptorTask.NAME,
+                BuildOptionsDescriptorTask.class,
+                task -> {
+                  task.getAllBuildOptions().convention(options.getAllOptions());
+                  task.getDescriptorFile()
+                      .convention(
+                          project
+                              .getLayout()
+                              .getBuildDirectory()
+                              .file("build-options/descriptor.json"));
+                });
+
+    project
+        .getTasks()
+        .register(
+            BuildOptionsExportTask.NAME,
+            BuildOptionsExportTask.class,
+            task -> {
+              task.getOptions().set(descriptorsOf(project, options));
+              task.getOutputFile()
+                  .convention(
+                      project.getLayout().getBuildDirectory().file("build-options/options.json"));
+            });
+
+    var descriptorUsage =
+        project.getObjects().named(Usage.class, OPTION_DESCRIPTORS_USAGE);
+    project
+        .getConfigurations()
+        .consumable(
+            OPTION_DESCRIPTOR_ELEMENTS_CONFIGURATION,
+            conf -> {
+              conf.attributes(attrs -> attrs.attribute(Usage.USAGE_ATTRIBUTE, descriptorUsage));
+              conf.getOutgoing()
+                  .artifact(
+                      descriptorTask.flatMap(BuildOptionsDescriptorTask::getDescriptorFile));
+            });
+
     // register an overview of all options for the root project.
     if (project == project.getRootProject()) {
+      var descriptorDependencies =
+          project.getConfigurations().dependencyScope(OPTION_DESCRIPTORS_CONFIGURATION);
+      descriptorDependencies.configure(
+          conf -> {
+            var dependencies = project.getDependencies();
+            conf.getDependencies()
+                .addAllLater(
+                    project
+                        .getProviders()
+                        .provider(
+                            () ->
+                                project.getSubprojects().stream()
+                                    .map(p -> dependencies.project(Map.of("path", p.getPath())))
+                                    .toList()));
+          });
+
+      var descriptorFiles =
+          project
+              .getConfigurations()
+              .resolvable(
+                  OPTION_DESCRIPTORS_CONFIGURATION + "Classpath",
+                  conf -> {
+                    conf.extendsFrom(descriptorDependencies.get());
+                    conf.attributes(
+                        attrs -> attrs.attribute(Usage.USAGE_ATTRIBUTE, descriptorUsage));
+                  });
+
+      project
+          .getTasks()
+          .register(
+              BuildOptionsUsageTask.NAME,
+              BuildOptionsUsageTask.class,
+              task ->
+                  task.getReportFile()
+                      .convention(
+                          project
+                              .getLayout()
+                              .getProjectDirectory()
+                              .file(BuildOptionsUsageService.REPORT_FILE)));
+
+      project
+          .getTasks()
+          .register(
+              BuildOptionsTimingTask.NAME,
+              BuildOptionsTimingTask.class,
+              task ->
+                  task.getReportFile()
+                      .convention(
+                          project
+                              .getLayout()
+                              .getProjectDirectory()
+                              .file(BuildOptionsTimingService.REPORT_FILE)));
+
+      project
+          .getTasks()
+          .register(
+              BuildOptionsExportTask.ALL_OPTIONS_NAME,
+              BuildOptionsExportTask.class,
+              task -> {
+                task.getOptions().set(descriptorsOf(project, options));
+                task.getOptionDescriptors()
+                    .from(
+                        descriptorFiles
+                            .get()
+                            .getIncoming()
+                            .artifactView(view -> view.lenient(true))
+                            .getFiles());
+                task.getOutputFile()
+                    .convention(
+                        project
+                            .getLayout()
+                            .getBuildDirectory()
+                            .file("build-options/all-options.json"));
+              });
+
       project
           .getTasks()
           .register(
               ALL_BUILD_OPTIONS_TASK_NAME,
               BuildOptionsTask.class,
               task -> {
-                project
-                    .getAllprojects()
-                    .forEach(
-                        p -> {
-                          task.getAllBuildOptions()
-                              .addAll(
-                                      p.getExtensions().getByType(BuildOptionsExtension.class).getAllOptions());
-                        });
+                // Projects that don't apply this plugin have no descriptors, hence the lenient
+                // view.
+                task.getOptionDescriptors()
+                    .from(
+                        descriptorFiles
+                            .get()
+                            .getIncoming()
+                            .artifactView(view -> view.lenient(true))
+                            .getFiles());
               });
     }
   }
 
-  private static @NotNull Provider<BuildOptionValue> fromLocalFile(
-      ProviderFactory providers,
-      String optionName,
-      Map<String, String> localOptions,
-      BuildOptionValueSource source,
-      String sourceFile) {
-    return providers
-        .of(
-            OptionFileValueSource.class,
-            valueSource -> {
-              OptionFileValueSource.Parameters params = valueSource.getParameters();
-              params.getSourceFile().set(sourceFile);
-              params.getName().set(optionName);
-              if (localOptions.containsKey(optionName)) {
-                params.getValue().set(localOptions.get(optionName));
-              }
-            })
-        .map(v -> new BuildOptionValue(v, source));
+  private static Provider<List<OptionDescriptor>> descriptorsOf(
+      Project project, BuildOptionsExtension options) {
+    var allOptions = options.getAllOptions();
+    return project
+        .getProviders()
+        .provider(() -> allOptions.stream().map(OptionDescriptor::of).toList());
   }
 
-  private static @NotNull Map<String, String> readBuildOptions(
-      Project project, String buildOptionsFile) {
-    Map<String, String> localOptions = new TreeMap<>();
-    var localOptionsFile =
-        project.getRootProject().getLayout().getProjectDirectory().file(buildOptionsFile);
-    if (localOptionsFile.getAsFile().exists()) {
-      try (var is = Files.newInputStream(localOptionsFile.getAsFile().toPath())) {
-        var v = new Properties();
-        v.load(is);
-        v.stringPropertyNames().forEach(key -> localOptions.put(key, v.getProperty(key)));
-      } catch (IOException e) {
-        throw new GradleException("Can't read the " + buildOptionsFile + " file.", e);
-      }
+  /** Returns the option timing service, if timing is enabled. */
+  @Nullable
+  static Provider<BuildOptionsTimingService> timingService(
+      Gradle gradle, ProviderFactory providers, File rootDirectory) {
+    boolean enabled =
+        providers
+            .gradleProperty(BuildOptionsTimingService.TIMING_PROPERTY)
+            .map(v -> v.isEmpty() || Boolean.parseBoolean(v))
+            .getOrElse(false);
+    if (!enabled) {
+      return null;
     }
-    return localOptions;
+    return BuildOptionsTimingService.startTiming(
+        gradle,
+        rootDirectory,
+        providers
+            .gradleProperty(BuildOptionsTimingService.SUMMARY_PROPERTY)
+            .map(Integer::parseInt));
+  }
+
+  static boolean isUsageTrackingEnabled(ProviderFactory providers) {
+    return providers
+        .gradleProperty(BuildOptionsUsageService.TRACK_USAGE_PROPERTY)
+        .map(v -> v.isEmpty() || Boolean.parseBoolean(v))
+        .getOrElse(false);
   }
 }
@@ -0,0 +1,51 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.Map;
+import org.gradle.api.provider.Property;
+
+/** Build-wide configuration of build options, available in the settings script. */
+public abstract class BuildOptionsSettingsExtension {
+  /**
+   * When enabled, options declared in multiple projects with the same name, type, description and
+   * default value (not a computed one) share a single, canonical value provider. This keeps
+   * configuration memory flat when the same option is declared in hundreds of projects.
+   */
+  public abstract Property<Boolean> getShareIdenticalOptions();
+
+  /**
+   * When enabled, all projects split their tests into shards selected with build options (see
+   * {@link BuildOptionsExtension#shardTests()}).
+   */
+  public abstract Property<Boolean> getShardTests();
+
+  /** What to do about keys that look like build options but don't match any declared option. */
+  public enum UnknownOptionPolicy {
+    IGNORE,
+    WARN,
+    FAIL
+  }
+
+  /**
+   * Validates option keys passed with {@code -P} or {@code -D} and keys of build option files
+   * against options declared in all projects, suggesting the closest option names. Defaults to the
+   * {@value #UNKNOWN_OPTIONS_PROPERTY} gradle property or {@code IGNORE}.
+   */
+  public abstract Property<UnknownOptionPolicy> getUnknownOptions();
+
+  /** The gradle property with the default {@link #getUnknownOptions()} policy. */
+  public static final String UNKNOWN_OPTIONS_PROPERTY = "buildOptions.unknownOptions";
+
+  private BuildOptionSources sources;
+
+  void setSources(BuildOptionSources sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * Defines (or extends) an option profile shared by all projects (see {@link
+   * BuildOptionsExtension#profile(String, Map)}).
+   */
+  public void profile(String name, Map<String, ?> values) {
+    sources.addProfile(name, values);
+  }
+}
@@ -0,0 +1,106 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.Locale;
+import javax.inject.Inject;
+import org.gradle.api.Plugin;
+import org.gradle.api.flow.FlowProviders;
+import org.gradle.api.flow.FlowScope;
+import org.gradle.api.initialization.Settings;
+import org.gradle.api.provider.Provider;
+
+/**
+ * A settings plugin that resolves build option value sources once for the whole build and applies
+ * {@link BuildOptionsPlugin} to all projects. Project-level {@code buildOptions} extensions then
+ * share the same option value chains instead of creating their own.
+ */
+public class BuildOptionsSettingsPlugin implements Plugin<Settings> {
+  private final FlowScope flowScope;
+  private final FlowProviders flowProviders;
+
+  @Inject
+  public BuildOptionsSettingsPlugin(FlowScope flowScope, FlowProviders flowProviders) {
+    this.flowScope = flowScope;
+    this.flowProviders = flowProviders;
+  }
+
+  @Override
+  public void apply(Settings settings) {
+    var gradle = settings.getGradle();
+
+    var extension =
+        settings
+            .getExtensions()
+            .create(
+                BuildOptionsPlugin.OPTIONS_EXTENSION_NAME, BuildOptionsSettingsExtension.class);
+    extension.getShareIdenticalOptions().convention(false);
+    extension.getShardTests().convention(false);
+    extension
+        .getUnknownOptions()
+        .convention(
+            settings
+                .getProviders()
+                .gradleProperty(BuildOptionsSettingsExtension.UNKNOWN_OPTIONS_PROPERTY)
+                .map(
+                    v ->
+                        BuildOptionsSettingsExtension.UnknownOptionPolicy.valueOf(
+                            v.trim().toUpperCase(Locale.ROOT)))
+                .orElse(BuildOptionsSettingsExtension.UnknownOptionPolicy.IGNORE));
+
+    Provider<BuildOptionsUsageService> usage = null;
+    if (BuildOptionsPlugin.isUsageTrackingEnabled(settings.getProviders())) {
+      usage = BuildOptionsUsageService.startTracking(gradle, settings.getRootDir());
+    }
+
+    var sources =
+        new BuildOptionSources(
+            settings.getProviders(),
+            settings.getRootDir(),
+            extension.getShareIdenticalOptions(),
+            usage,
+            BuildOptionsPlugin.timingService(
+                gradle, settings.getProviders(), settings.getRootDir()));
+    extension.setSources(sources);
+    BuildOptionsPlugin.clearOptionFilesAfterBuild(flowScope, flowProviders);
+    gradle
+        .getExtensions()
+        .add(BuildOptionSources.class, BuildOptionSources.EXTENSION_NAME, sources);
+
+    var optionNames =
+        gradle
+            .getSharedServices()
+            .registerIfAbsent(BuildOptionNamesService.SERVICE_NAME, BuildOptionNamesService.class);
+    var optionSources = sources;
+    gradle
+        .getLifecycle()
+        .beforeProject(
+            project -> {
+              project.getPluginManager().apply(BuildOptionsPlugin.class);
+              if (extension.getShardTests().get()) {
+                project.getExtensions().getByType(BuildOptionsExtension.class).shardTests();
+              }
+
+              // Each project registers its own option names (for unknown option detection).
+              project.afterEvaluate(
+                  p -> {
+                    if (extension.getUnknownOptions().get()
+                        != BuildOptionsSettingsExtension.UnknownOptionPolicy.IGNORE) {
+                      optionNames
+                          .get()
+                          .addProject(
+                              p.getExtensions()
+                                  .getByType(BuildOptionsExtension.class)
+                                  .getAllOptions()
+                                  .getNames(),
+                              optionSources.optionFileDirs(p.getProjectDir()));
+                    }
+                  });
+            });
+
+    var providers = settings.getProviders();
+    var rootDir = settings.getRootDir();
+    gradle.projectsEvaluated(
+        g ->
+            UnknownOptions.check(
+                g, providers, rootDir, optionNames, extension.getUnknownOptions().get()));
+  }
+}
@@ -2,10 +2,19 @@ package com.carrotsearch.gradle.buildinfra.buildoptions;
 
 import org.gradle.api.Action;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
 import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
 import org.gradle.internal.logging.text.StyledTextOutput;
 import org.gradle.internal.logging.text.StyledTextOutput.Style;
 import org.gradle.internal.logging.text.StyledTextOutputFactory;
@@ -16,10 +25,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -45,10 +54,18 @@ public abstract class BuildOptionsTask extends DefaultTask {
     @Input
     public abstract SetProperty<BuildOption> getAllBuildOptions();
 
+    /**
+     * Descriptor files of options declared in other projects (see {@link BuildOptionsDescriptorTask}).
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract ConfigurableFileCollection getOptionDescriptors();
+
     @Inject
     public BuildOptionsTask(Project project) {
         setDescription("Shows configurable options");
         setGroup(BUILD_OPTIONS_TASK_GROUP);
+        getOverriddenOnly().convention(false);
         getAllBuildOptions()
                 .convention(
                         getProject().getExtensions().getByType(BuildOptionsExtension.class).getAllOptions());
@@ -68,15 +85,60 @@ public abstract class BuildOptionsTask extends DefaultTask {
         action.execute(groupingSpec);
     }
 
+    /**
+     * Task switches of this project (see {@link BuildOptionsExtension#pruneTasks(String, String...)}).
+     */
+    @Input
+    public abstract ListProperty<TaskSwitch> getTaskSwitches();
+
+    /**
+     * Only show options with names matching any of these glob patterns.
+     */
+    @Input
+    @Option(option = "filter", description = "Only shows options with names matching the glob pattern (can be repeated).")
+    public abstract ListProperty<String> getFilters();
+
+    /**
+     * Only show options in the option group with this description.
+     */
+    @Input
+    @Optional
+    @Option(option = "group", description = "Only shows options in the given option group.")
+    public abstract Property<String> getOptionGroup();
+
+    /**
+     * Only show options with overridden values.
+     */
+    @Input
+    @Option(option = "overridden-only", description = "Only shows options with overridden values.")
+    public abstract Property<Boolean> getOverriddenOnly();
+
     @TaskAction
     public void exec() {
         var out = getOutputFactory().create(this.getClass());
 
-        Set<BuildOption> allBuildOptions = getAllBuildOptions().get();
+        // The project's own options are pruned by name (and group) before their values are
+        // resolved. Descriptors of other projects are written (resolved) by their descriptor
+        // tasks, which don't know about the filter, and are only filtered here.
+        var nameFilter = nameFilter();
+        List<OptionDescriptor> allBuildOptions = new ArrayList<>();
+        getAllBuildOptions().get().stream()
+                .filter(option -> nameFilter.test(option.getName()))
+                .forEach(option -> allBuildOptions.add(OptionDescriptor.of(option)));
+        getOptionDescriptors().forEach(file -> {
+            for (var descriptor : OptionDescriptor.read(file)) {
+                if (nameFilter.test(descriptor.name())) {
+                    allBuildOptions.add(descriptor);
+                }
+            }
+        });
+        if (getOverriddenOnly().get()) {
+            allBuildOptions.removeIf(opt -> !isOverridden(opt));
+        }
 
         int sourceProjectCount =
                 allBuildOptions.stream()
-                        .map(BuildOption::getProjectPath)
+                        .map(OptionDescriptor::projectPath)
                         .collect(Collectors.toSet())
                         .size();
 
@@ -86,31 +148,43 @@ public abstract class BuildOptionsTask extends DefaultTask {
                 .append("\n\n");
 
         final int keyWidth =
-                allBuildOptions.stream().mapToInt(opt -> opt.getName().length()).max().orElse(1);
+                allBuildOptions.stream().mapToInt(opt -> opt.name().length()).max().orElse(1);
         final String keyFmt = "%-" + keyWidth + "s = ";
 
-        List<BuildOption> sortedOptions =
-                allBuildOptions.stream().sorted(Comparator.comparing(BuildOption::getName)).toList();
+        List<OptionDescriptor> sortedOptions =
+                allBuildOptions.stream().sorted(Comparator.comparing(OptionDescriptor::name)).toList();
 
         boolean includeSourceProjectRef = sourceProjectCount > 1;
 
-        if (groupingSpec.getOptionGroups().isEmpty()) {
+        var groups = groupingSpec.getOptionGroups();
+        if (groups.isEmpty()) {
             printOptionList(sortedOptions, out, keyFmt, includeSourceProjectRef);
         } else {
-            var ungrouped = new LinkedHashSet<>(sortedOptions);
-            for (OptionGroup group : groupingSpec.getOptionGroups()) {
-                var matchingOptions =
-                        sortedOptions.stream()
-                                .filter(opt -> group.matcher().matcher(opt.getName()).matches())
-                                .toList();
+            // Classify each option in a single pass: an option is listed in every matching group.
+            List<List<OptionDescriptor>> grouped = new ArrayList<>();
+            groups.forEach(group -> grouped.add(new ArrayList<>()));
+            List<OptionDescriptor> ungrouped = new ArrayList<>();
+            for (var opt : sortedOptions) {
+                boolean matched = false;
+                for (int i = 0; i < groups.size(); i++) {
+                    if (groups.get(i).matcher().matcher(opt.name()).matches()) {
+                        grouped.get(i).add(opt);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    ungrouped.add(opt);
+                }
+            }
 
+            for (int i = 0; i < groups.size(); i++) {
+                var matchingOptions = grouped.get(i);
                 if (matchingOptions.isEmpty()) {
                     continue;
                 }
 
-                printOptionGroupHeader(out, group.description());
+                printOptionGroupHeader(out, groups.get(i).description());
                 printOptionList(matchingOptions, out, keyFmt, includeSourceProjectRef);
-                ungrouped.removeIf(matchingOptions::contains);
                 out.println();
             }
 
@@ -120,76 +194,139 @@ public abstract class BuildOptionsTask extends DefaultTask {
             }
         }
 
+        var switches = getTaskSwitches().get().stream()
+                .filter(taskSwitch -> nameFilter.test(taskSwitch.optionName()))
+                .toList();
+        if (!switches.isEmpty()) {
+            out.println();
+            printOptionGroupHeader(out, "Task switches");
+            for (var taskSwitch : switches) {
+                out.format(keyFmt, taskSwitch.optionName());
+                out.withStyle(taskSwitch.isOn() ? overridden : normal).format("%-8s", taskSwitch.isOn() ? "on" : "off");
+                out.withStyle(comment)
+                        .append(" # ")
+                        .append(taskSwitch.isOn() ? "removes: " : "would remove: ")
+                        .append(taskSwitch.tasks().isEmpty() ? "(no tasks)" : String.join(", ", taskSwitch.tasks()))
+                        .append("\n");
+            }
+        }
+
         out.println();
         printLegend(out);
     }
 
+    /**
+     * Returns a predicate selecting option names matching the {@code --filter} patterns and the
+     * {@code --group} option group (all names, if neither is given).
+     */
+    private Predicate<String> nameFilter() {
+        Predicate<String> filter = name -> true;
+
+        var patterns = getFilters().get().stream().map(OptionGlobs::toPattern).toList();
+        if (!patterns.isEmpty()) {
+            filter = name -> patterns.stream().anyMatch(p -> p.matcher(name).matches());
+        }
+
+        var groupName = getOptionGroup().getOrNull();
+        if (groupName != null) {
+            var groups = groupingSpec.getOptionGroups();
+            var selected = groups.stream()
+                    .filter(group -> group.description().equalsIgnoreCase(groupName))
+                    .map(OptionGroup::matcher)
+                    .toList();
+            Predicate<String> inGroup;
+            if (!selected.isEmpty()) {
+                inGroup = name -> selected.stream().anyMatch(p -> p.matcher(name).matches());
+            } else if (groupName.equalsIgnoreCase(groupingSpec.getOtherOptions())) {
+                inGroup = name -> groups.stream().noneMatch(group -> group.matcher().matcher(name).matches());
+            } else {
+                throw new GradleException("Unknown option group: " + groupName + " (available groups: "
+                        + groups.stream().map(OptionGroup::description).collect(Collectors.joining(", ")) + ")");
+            }
+            filter = filter.and(inGroup);
+        }
+        return filter;
+    }
+
+    /**
+     * An option is overridden if its value comes from any source other than its default value.
+     */
+    private static boolean isOverridden(OptionDescriptor opt) {
+        return opt.value() != null && !opt.isDefault() && opt.source() != BuildOptionValueSource.COMPUTED_VALUE;
+    }
+
     record OptionKey(String name, BuildOptionType type, String value, String description) {
     }
 
     private void printOptionList(
-            Collection<BuildOption> sortedOptions,
+            Collection<OptionDescriptor> sortedOptions,
             StyledTextOutput out,
             String keyFmt,
             boolean includeProjectRef) {
-        var grouped =
-                sortedOptions.stream()
-                        .collect(
-                                Collectors.groupingBy(
-                                        (BuildOption option) -> {
-                                            return new OptionKey(
-                                                    option.getName(),
-                                                    option.getType(),
-                                                    option.asStringProvider().getOrElse(""),
-                                                    option.getDescription());
-                                        },
-                                        LinkedHashMap::new,
-                                        Collectors.toList()));
-
-        for (var entry : grouped.entrySet()) {
+        for (var entry : groupByOptionKey(sortedOptions).entrySet()) {
             printOptionInfo(entry.getValue().getFirst(), out, keyFmt, includeProjectRef, entry.getValue().size());
         }
     }
 
+    /**
+     * Groups identical options (same name, type, value and description) declared in multiple projects.
+     */
+    static LinkedHashMap<OptionKey, List<OptionDescriptor>> groupByOptionKey(
+            Collection<OptionDescriptor> options) {
+        return options.stream()
+                .collect(
+                        Collectors.groupingBy(
+                                (OptionDescriptor option) -> {
+                                    return new OptionKey(
+                                            option.name(),
+                                            option.type(),
+                                            Objects.requireNonNullElse(option.value(), ""),
+                                            option.description());
+                                },
+                                LinkedHashMap::new,
+                                Collectors.toList()));
+    }
+
     private static void printOptionInfo(
-            BuildOption opt,
+            OptionDescriptor opt,
             StyledTextOutput out,
             String keyFmt,
             boolean includeProjectRef,
             int projectRefs) {
-        var value = opt.getValue();
+        var value = opt.value();
 
         String valueSource = null;
         var valueStyle = normal;
-        if (!value.isPresent()) {
+        if (value == null) {
             valueStyle = comment;
         } else {
-            var optionValue = value.get();
-            if (optionValue.source() == BuildOptionValueSource.COMPUTED_VALUE) {
+            if (opt.source() == BuildOptionValueSource.COMPUTED_VALUE) {
                 valueStyle = computed;
-                valueSource = "computed value";
-            } else if (!opt.isEqualToDefaultValue()) {
+                valueSource = opt.origin() == null ? "computed value" : "derived from: " + opt.origin();
+            } else if (!opt.isDefault()) {
                 valueStyle = overridden;
                 valueSource =
-                        switch (optionValue.source()) {
+                        switch (opt.source()) {
                             case GRADLE_PROPERTY -> "project property";
                             case SYSTEM_PROPERTY -> "system property";
                             case ENVIRONMENT_VARIABLE -> "environment variable";
+                            case PROFILE -> "profile '" + opt.origin() + "'";
                             case EXPLICIT_VALUE -> "explicit value";
                             case COMPUTED_VALUE -> throw new RuntimeException("Unreachable");
-                            case BUILD_OPTIONS_FILE -> BuildOptionsPlugin.BUILD_OPTIONS_FILE + " file";
-                            case LOCAL_BUILD_OPTIONS_FILE -> BuildOptionsPlugin.LOCAL_BUILD_OPTIONS_FILE + " file";
+                            case BUILD_OPTIONS_FILE -> Objects.requireNonNullElse(opt.origin(), BuildOptionsPlugin.BUILD_OPTIONS_FILE) + " file";
+                            case LOCAL_BUILD_OPTIONS_FILE -> Objects.requireNonNullElse(opt.origin(), BuildOptionsPlugin.LOCAL_BUILD_OPTIONS_FILE) + " file";
+                            case REPLAYED_SNAPSHOT -> "replayed snapshot";
                         };
             }
         }
 
-        out.format(keyFmt, opt.getName());
-        out.withStyle(valueStyle).format("%-8s", value.isPresent() ? value.get() : "[empty]");
-        out.withStyle(comment).append(" # ").append(opt.getDescription());
+        out.format(keyFmt, opt.name());
+        out.withStyle(valueStyle).format("%-8s", value != null ? value : "[empty]");
+        out.withStyle(comment).append(" # ").append(opt.description());
 
         List<String> extraInfo = new ArrayList<>();
-        if (opt.getType() != BuildOptionType.STRING) {
-            extraInfo.add("type: " + opt.getType().toString().toLowerCase(Locale.ROOT));
+        if (opt.type() != BuildOptionType.STRING) {
+            extraInfo.add("type: " + opt.type().toString().toLowerCase(Locale.ROOT));
         }
         if (valueSource != null) {
             extraInfo.add("source: " + valueSource);
@@ -198,7 +335,7 @@ public abstract class BuildOptionsTask extends DefaultTask {
             if (projectRefs > 1) {
                 extraInfo.add("in " + projectRefs + " projects");
             } else {
-                extraInfo.add("in '" + opt.getProjectPath() + "'");
+                extraInfo.add("in '" + opt.projectPath() + "'");
             }
         }
         if (!extraInfo.isEmpty()) {
@@ -0,0 +1,166 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Records how long resolving each build option's value took (including its computed default), how
+ * many times it was resolved and which source supplied the value. The records are written to a
+ * report file at the end of the build (see {@link BuildOptionsTimingTask}); the slowest options can
+ * also be summarized in the build output.
+ */
+public abstract class BuildOptionsTimingService
+    implements BuildService<BuildOptionsTimingService.Parameters>, AutoCloseable {
+  public static final String SERVICE_NAME = "buildOptionsTiming";
+
+  /** The gradle property enabling option timing. */
+  public static final String TIMING_PROPERTY = "buildOptions.timing";
+
+  /**
+   * The gradle property with the number of slowest options to summarize at the end of the build
+   * (none by default).
+   */
+  public static final String SUMMARY_PROPERTY = "buildOptions.timing.summary";
+
+  /** The report file, relative to the root project directory. */
+  static final String REPORT_FILE = ".gradle/build-options/timing.json";
+
+  private static final Logger LOGGER = Logging.getLogger(BuildOptionsTimingService.class);
+
+  public interface Parameters extends BuildServiceParameters {
+    RegularFileProperty getReportFile();
+
+    Property<Integer> getSummarySize();
+  }
+
+  /** Resolution statistics of a single option. */
+  record Timing(
+      String name,
+      int count,
+      long totalNanos,
+      long maxNanos,
+      @Nullable BuildOptionValueSource source) {
+    Map<String, Object> toMap() {
+      var map = new LinkedHashMap<String, Object>();
+      map.put("name", name);
+      map.put("count", count);
+      map.put("totalNanos", totalNanos);
+      map.put("maxNanos", maxNanos);
+      map.put("source", source == null ? null : source.name());
+      return map;
+    }
+
+    static Timing fromMap(Map<?, ?> map) {
+      var source = (String) map.get("source");
+      return new Timing(
+          (String) map.get("name"),
+          ((Number) map.get("count")).intValue(),
+          ((Number) map.get("totalNanos")).longValue(),
+          ((Number) map.get("maxNanos")).longValue(),
+          source == null ? null : BuildOptionValueSource.valueOf(source));
+    }
+
+    Timing add(long nanos, @Nullable BuildOptionValueSource source) {
+      return new Timing(name, count + 1, totalNanos + nanos, Math.max(maxNanos, nanos), source);
+    }
+  }
+
+  /** Reads timings from the report file, slowest (by total time) first. */
+  static List<Timing> read(File file) {
+    var timings = new ArrayList<Timing>();
+    if (file.exists()) {
+      var json = (List<?>) new JsonSlurper().parse(file, StandardCharsets.UTF_8.name());
+      json.forEach(v -> timings.add(Timing.fromMap((Map<?, ?>) v)));
+    }
+    return timings;
+  }
+
+  static String formatMillis(long nanos) {
+    return String.format(Locale.ROOT, "%.1f ms", nanos / 1_000_000d);
+  }
+
+  private final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+  /** Records a single resolution of the given option's value. */
+  void record(String optionName, @Nullable BuildOptionValue value, long nanos) {
+    var source = value == null ? null : value.source();
+    timings.merge(
+        optionName,
+        new Timing(optionName, 1, nanos, nanos, source),
+        (previous, current) -> previous.add(nanos, source));
+  }
+
+  /** Writes the report (and the summary of the slowest options) at the end of the build. */
+  @Override
+  public void close() {
+    var sorted =
+        timings.values().stream()
+            .sorted(
+                Comparator.comparingLong(Timing::totalNanos)
+                    .reversed()
+                    .thenComparing(Timing::name))
+            .toList();
+
+    var reportFile = getParameters().getReportFile().get().getAsFile();
+    try {
+      Files.createDirectories(reportFile.toPath().getParent());
+      Files.writeString(
+          reportFile.toPath(),
+          JsonOutput.prettyPrint(JsonOutput.toJson(sorted.stream().map(Timing::toMap).toList())),
+          StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new GradleException("Can't write build option timing report to: " + reportFile, e);
+    }
+
+    int summarySize = getParameters().getSummarySize().getOrElse(0);
+    if (summarySize > 0 && !sorted.isEmpty()) {
+      var sb = new StringBuilder("Slowest build options:");
+      for (var timing : sorted.subList(0, Math.min(summarySize, sorted.size()))) {
+        sb.append(
+            String.format(
+                Locale.ROOT,
+                "%n  %s: %s (%d resolutions, source: %s)",
+                timing.name(),
+                formatMillis(timing.totalNanos()),
+                timing.count(),
+                timing.source() == null ? "none" : timing.source().name()));
+      }
+      LOGGER.lifecycle(sb.toString());
+    }
+  }
+
+  /** Registers the service (if needed). */
+  static Provider<BuildOptionsTimingService> startTiming(
+      Gradle gradle, File rootDirectory, Provider<Integer> summarySize) {
+    return gradle
+        .getSharedServices()
+        .registerIfAbsent(
+            SERVICE_NAME,
+            BuildOptionsTimingService.class,
+            spec -> {
+              spec.getParameters().getReportFile().set(new File(rootDirectory, REPORT_FILE));
+              spec.getParameters().getSummarySize().set(summarySize);
+            });
+  }
+}
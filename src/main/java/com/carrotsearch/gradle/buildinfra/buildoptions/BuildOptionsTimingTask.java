@@ -0,0 +1,73 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.gradle.internal.logging.text.StyledTextOutputFactory;
+
+/**
+ * Displays how long resolving each build option took in the last build with option timing enabled
+ * (see {@link BuildOptionsTimingService#TIMING_PROPERTY}), slowest first.
+ */
+@UntrackedTask(because = "The report file is rewritten at the end of each timed build.")
+public abstract class BuildOptionsTimingTask extends DefaultTask {
+  public static final String NAME = "buildOptionsTiming";
+
+  @Inject
+  protected abstract StyledTextOutputFactory getOutputFactory();
+
+  @Internal
+  public abstract RegularFileProperty getReportFile();
+
+  public BuildOptionsTimingTask() {
+    setDescription("Shows how long resolving build options took");
+    setGroup(BuildOptionsTask.BUILD_OPTIONS_TASK_GROUP);
+  }
+
+  @TaskAction
+  public void exec() {
+    var out = getOutputFactory().create(this.getClass());
+
+    var reportFile = getReportFile().get().getAsFile();
+    if (!reportFile.exists()) {
+      out.append("No option timings recorded yet, run a build with -P")
+          .append(BuildOptionsTimingService.TIMING_PROPERTY)
+          .append("=true first.")
+          .println();
+      return;
+    }
+
+    var timings = BuildOptionsTimingService.read(reportFile);
+    var header = "Option resolution times (slowest first)";
+    out.withStyle(BuildOptionsTask.optionGroupHeader)
+        .append(header)
+        .append("\n")
+        .append("=".repeat(header.length()));
+    out.println();
+
+    if (timings.isEmpty()) {
+      out.withStyle(BuildOptionsTask.comment).append("(none)").println();
+      return;
+    }
+
+    int keyWidth = timings.stream().mapToInt(t -> t.name().length()).max().orElse(1);
+    for (var timing : timings) {
+      out.format("%-" + keyWidth + "s = ", timing.name());
+      out.withStyle(BuildOptionsTask.normal)
+          .format("%10s", BuildOptionsTimingService.formatMillis(timing.totalNanos()));
+      out.withStyle(BuildOptionsTask.extras)
+          .append(" (")
+          .append(Integer.toString(timing.count()))
+          .append(timing.count() == 1 ? " resolution" : " resolutions")
+          .append(", slowest: ")
+          .append(BuildOptionsTimingService.formatMillis(timing.maxNanos()))
+          .append(", source: ")
+          .append(timing.source() == null ? "none" : timing.source().name())
+          .append(")");
+      out.append("\n");
+    }
+  }
+}
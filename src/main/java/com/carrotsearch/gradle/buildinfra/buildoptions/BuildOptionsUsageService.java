@@ -0,0 +1,194 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Records which build options were resolved at configuration time (these are inputs of the
+ * configuration cache) and which at execution time, along with their values and sources. The
+ * records are written to a report file, so that options which changed since the last
+ * configuration (and invalidated the configuration cache) can be identified.
+ */
+public abstract class BuildOptionsUsageService
+    implements BuildService<BuildOptionsUsageService.Parameters>, AutoCloseable {
+  public static final String SERVICE_NAME = "buildOptionsUsage";
+
+  /** The gradle property enabling option usage tracking. */
+  public static final String TRACK_USAGE_PROPERTY = "buildOptions.trackUsage";
+
+  /** The report file, relative to the root project directory. */
+  static final String REPORT_FILE = ".gradle/build-options/usage.json";
+
+  private static final Logger LOGGER = Logging.getLogger(BuildOptionsUsageService.class);
+
+  public interface Parameters extends BuildServiceParameters {
+    RegularFileProperty getReportFile();
+  }
+
+  /** A single resolution of an option's value. */
+  record UsageRecord(String name, String value, BuildOptionValueSource source, boolean changed) {
+    Map<String, Object> toMap() {
+      var map = new LinkedHashMap<String, Object>();
+      map.put("name", name);
+      map.put("value", value);
+      map.put("source", source.name());
+      map.put("changed", changed);
+      return map;
+    }
+
+    static UsageRecord fromMap(Map<?, ?> map) {
+      return new UsageRecord(
+          (String) map.get("name"),
+          (String) map.get("value"),
+          BuildOptionValueSource.valueOf((String) map.get("source")),
+          Boolean.TRUE.equals(map.get("changed")));
+    }
+  }
+
+  /** Contents of the report file. */
+  record UsageReport(List<UsageRecord> configuration, List<UsageRecord> execution) {
+    static UsageReport read(File file) {
+      if (!file.exists()) {
+        return new UsageReport(List.of(), List.of());
+      }
+      var json = (Map<?, ?>) new JsonSlurper().parse(file, StandardCharsets.UTF_8.name());
+      return new UsageReport(
+          records((List<?>) json.get("configuration")), records((List<?>) json.get("execution")));
+    }
+
+    private static List<UsageRecord> records(List<?> list) {
+      var records = new ArrayList<UsageRecord>();
+      if (list != null) {
+        list.forEach(v -> records.add(UsageRecord.fromMap((Map<?, ?>) v)));
+      }
+      return records;
+    }
+
+    void write(File file) {
+      var json = new LinkedHashMap<String, Object>();
+      json.put("configuration", configuration.stream().map(UsageRecord::toMap).toList());
+      json.put("execution", execution.stream().map(UsageRecord::toMap).toList());
+      try {
+        Files.createDirectories(file.toPath().getParent());
+        Files.writeString(
+            file.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(json)), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new GradleException("Can't write build option usage report to: " + file, e);
+      }
+    }
+  }
+
+  private final Map<String, BuildOptionValue> configurationReads = new ConcurrentHashMap<>();
+  private final Map<String, BuildOptionValue> executionReads = new ConcurrentHashMap<>();
+  private volatile boolean configuring;
+  private volatile Map<String, BuildOptionValue> configurationSnapshot;
+
+  /** Marks the beginning of the configuration phase. */
+  void configurationStarted() {
+    configuring = true;
+  }
+
+  /** Marks the end of the configuration phase (once the task graph is ready). */
+  synchronized void configurationFinished() {
+    if (configuring) {
+      configuring = false;
+      configurationSnapshot = new TreeMap<>(configurationReads);
+    }
+  }
+
+  /** Records a resolved value of the given option. */
+  void record(String optionName, BuildOptionValue value) {
+    (configuring ? configurationReads : executionReads).put(optionName, value);
+  }
+
+  /**
+   * Writes the report at the end of the build. The report file is never read or written at
+   * configuration time, as it would become an input of the configuration cache.
+   */
+  @Override
+  public synchronized void close() {
+    var reportFile = getParameters().getReportFile().get().getAsFile();
+    var previous = UsageReport.read(reportFile);
+
+    // Keep configuration-time records of the previous build if configuration didn't run at all
+    // (the configuration cache was reused).
+    List<UsageRecord> configuration = previous.configuration();
+    if (configurationSnapshot != null) {
+      var previousRecords = new TreeMap<String, UsageRecord>();
+      previous.configuration().forEach(r -> previousRecords.put(r.name(), r));
+
+      var records = new ArrayList<UsageRecord>();
+      configurationSnapshot.forEach(
+          (name, value) -> {
+            var prev = previousRecords.get(name);
+            boolean changed =
+                prev == null
+                    || !Objects.equals(prev.value(), value.value())
+                    || prev.source() != value.source();
+            records.add(new UsageRecord(name, value.value(), value.source(), changed));
+          });
+      configuration = records;
+
+      var changed = records.stream().filter(UsageRecord::changed).map(UsageRecord::name).toList();
+      if (!previousRecords.isEmpty() && !changed.isEmpty()) {
+        LOGGER.lifecycle(
+            "Build options read at configuration time that changed since the last configuration: "
+                + String.join(", ", changed));
+      }
+    }
+
+    List<UsageRecord> execution = previous.execution();
+    if (configurationSnapshot == null || !executionReads.isEmpty()) {
+      var records = new ArrayList<UsageRecord>();
+      new TreeMap<>(executionReads)
+          .forEach(
+              (name, value) ->
+                  records.add(new UsageRecord(name, value.value(), value.source(), false)));
+      execution = records;
+    }
+
+    new UsageReport(configuration, execution).write(reportFile);
+  }
+
+  /**
+   * Registers the service (if needed) and starts tracking configuration-time reads until the task
+   * graph is ready: lazily registered tasks are configured after projects are evaluated, while the
+   * task graph is built, and their reads are configuration cache inputs too. Without the settings
+   * plugin, this is called by every project, but only the call registering the service starts
+   * tracking.
+   */
+  static Provider<BuildOptionsUsageService> startTracking(Gradle gradle, File rootDirectory) {
+    var sharedServices = gradle.getSharedServices();
+    if (sharedServices.getRegistrations().findByName(SERVICE_NAME) != null) {
+      return sharedServices.registerIfAbsent(SERVICE_NAME, BuildOptionsUsageService.class);
+    }
+
+    var service =
+        sharedServices.registerIfAbsent(
+            SERVICE_NAME,
+            BuildOptionsUsageService.class,
+            spec -> spec.getParameters().getReportFile().set(new File(rootDirectory, REPORT_FILE)));
+    service.get().configurationStarted();
+    gradle.getTaskGraph().whenReady(graph -> service.get().configurationFinished());
+    return service;
+  }
+}
@@ -0,0 +1,88 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.List;
+import java.util.Objects;
+import javax.inject.Inject;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.gradle.internal.logging.text.StyledTextOutput;
+import org.gradle.internal.logging.text.StyledTextOutput.Style;
+import org.gradle.internal.logging.text.StyledTextOutputFactory;
+
+/**
+ * Displays which build options were read at configuration time (inputs of the configuration
+ * cache) and which at execution time in the last build with option usage tracking enabled (see
+ * {@link BuildOptionsUsageService#TRACK_USAGE_PROPERTY}).
+ */
+@UntrackedTask(because = "The report file is rewritten at the end of each tracked build.")
+public abstract class BuildOptionsUsageTask extends DefaultTask {
+  public static final String NAME = "buildOptionsUsage";
+
+  @Inject
+  protected abstract StyledTextOutputFactory getOutputFactory();
+
+  @Internal
+  public abstract RegularFileProperty getReportFile();
+
+  public BuildOptionsUsageTask() {
+    setDescription("Shows build options read at configuration and execution time");
+    setGroup(BuildOptionsTask.BUILD_OPTIONS_TASK_GROUP);
+  }
+
+  @TaskAction
+  public void exec() {
+    var out = getOutputFactory().create(this.getClass());
+
+    var reportFile = getReportFile().get().getAsFile();
+    if (!reportFile.exists()) {
+      out.append("No option usage recorded yet, run a build with -P")
+          .append(BuildOptionsUsageService.TRACK_USAGE_PROPERTY)
+          .append("=true first.")
+          .println();
+      return;
+    }
+
+    var report = BuildOptionsUsageService.UsageReport.read(reportFile);
+    printRecords(
+        out,
+        "Options read at configuration time (configuration cache inputs)",
+        report.configuration(),
+        true);
+    out.println();
+    printRecords(out, "Options read at execution time", report.execution(), false);
+  }
+
+  private static void printRecords(
+      StyledTextOutput out,
+      String header,
+      List<BuildOptionsUsageService.UsageRecord> records,
+      boolean flagChanges) {
+    out.withStyle(BuildOptionsTask.optionGroupHeader)
+        .append(header)
+        .append("\n")
+        .append("=".repeat(header.length()));
+    out.println();
+
+    if (records.isEmpty()) {
+      out.withStyle(BuildOptionsTask.comment).append("(none)").println();
+      return;
+    }
+
+    int keyWidth = records.stream().mapToInt(r -> r.name().length()).max().orElse(1);
+    for (var record : records) {
+      out.format("%-" + keyWidth + "s = ", record.name());
+      var style =
+          flagChanges && record.changed() ? BuildOptionsTask.overridden : BuildOptionsTask.normal;
+      out.withStyle(style).format("%-8s", Objects.requireNonNullElse(record.value(), "[empty]"));
+      out.withStyle(BuildOptionsTask.extras).append(" (source: ").append(record.source().name());
+      if (flagChanges && record.changed()) {
+        out.withStyle(BuildOptionsTask.overridden).append(", changed since last configuration");
+      }
+      out.withStyle(BuildOptionsTask.extras).append(")");
+      out.append("\n");
+    }
+  }
+}
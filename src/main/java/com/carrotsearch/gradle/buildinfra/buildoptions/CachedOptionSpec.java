@@ -0,0 +1,37 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+
+/**
+ * Specification of an option with an expensive, computed default value, cached on disk. The value
+ * is recomputed only when any of the declared inputs (files or values) changes.
+ */
+public abstract class CachedOptionSpec {
+  /** The (expensive) computation of the default value. */
+  public abstract Property<String> getValue();
+
+  /**
+   * The version of the computation (part of the cache key): change it when the computation itself
+   * changes, so that values cached by the previous computation are discarded.
+   */
+  public abstract Property<String> getCacheVersion();
+
+  /** Files the computed value depends on (their content is part of the cache key). */
+  public abstract ConfigurableFileCollection getInputFiles();
+
+  /** Other values (options, environment variables) the computed value depends on. */
+  public abstract MapProperty<String, String> getInputValues();
+
+  /** Adds the given files to cache key inputs. */
+  public void inputFiles(Object... paths) {
+    getInputFiles().from(paths);
+  }
+
+  /** Adds the given value to cache key inputs. */
+  public void inputValue(String key, Provider<String> value) {
+    getInputValues().put(key, value.orElse(""));
+  }
+}
@@ -0,0 +1,140 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+/**
+ * Persistent (on-disk) cache of computed option default values. Each option (of each project) has
+ * a single cache entry storing the digest of its inputs (and the computation's version) and the
+ * computed value; the value is recomputed when the digest changes. Entries are replaced
+ * atomically, so concurrent or interrupted builds never leave a truncated value behind a matching
+ * digest.
+ *
+ * <p>The digest is computed in a value source whose parameters are the declared inputs, so it is
+ * a configuration cache input: changing any input file (or value) invalidates the configuration
+ * cache, even though the computation itself doesn't run when the cached value is reused.
+ */
+public final class CachedOptionValues {
+  /** The cache directory, relative to the root project directory. */
+  static final String CACHE_DIR = ".gradle/build-options/cache";
+
+  private CachedOptionValues() {}
+
+  /** Computes the digest of an option's declared inputs (and the computation's version). */
+  public abstract static class InputsDigestValueSource
+      implements ValueSource<String, InputsDigestValueSource.Parameters> {
+    public String obtain() {
+      var params = getParameters();
+      var md = Digests.sha256();
+      Digests.update(md, params.getOptionKey().get());
+      Digests.update(md, params.getCacheVersion().getOrElse(""));
+
+      var files = new TreeMap<String, File>();
+      params.getInputFiles().getFiles().forEach(f -> files.put(f.getAbsolutePath(), f));
+      try {
+        for (var e : files.entrySet()) {
+          Digests.update(md, e.getKey());
+          var file = e.getValue();
+          if (file.isFile()) {
+            md.update(Files.readAllBytes(file.toPath()));
+          } else {
+            Digests.update(md, file.exists() ? "<directory>" : "<missing>");
+          }
+        }
+      } catch (IOException e) {
+        throw new GradleException(
+            "Can't read inputs of the cached option: " + params.getOptionKey().get(), e);
+      }
+
+      for (var e : new TreeMap<>(params.getInputValues().get()).entrySet()) {
+        Digests.update(md, e.getKey());
+        Digests.update(md, e.getValue());
+      }
+      return Digests.hex(md);
+    }
+
+    public abstract static class Parameters implements ValueSourceParameters {
+      abstract Property<String> getOptionKey();
+
+      abstract Property<String> getCacheVersion();
+
+      abstract ConfigurableFileCollection getInputFiles();
+
+      abstract MapProperty<String, String> getInputValues();
+    }
+  }
+
+  static Provider<String> cached(
+      ProviderFactory providers,
+      File cacheDir,
+      String projectPath,
+      String optionName,
+      CachedOptionSpec spec) {
+    var optionKey = projectPath + ":" + optionName;
+    var entryFile = new File(cacheDir, Digests.digest(optionKey));
+    var value = spec.getValue();
+    return providers
+        .of(
+            InputsDigestValueSource.class,
+            valueSource -> {
+              var params = valueSource.getParameters();
+              params.getOptionKey().set(optionKey);
+              params.getCacheVersion().set(spec.getCacheVersion());
+              params.getInputFiles().from(spec.getInputFiles());
+              params.getInputValues().set(spec.getInputValues());
+            })
+        .map(inputsDigest -> readOrCompute(entryFile.toPath(), inputsDigest, value, optionKey));
+  }
+
+  /** Returns the cached value if its digest matches, otherwise computes and stores it. */
+  @Nullable
+  private static String readOrCompute(
+      Path entry, String inputsDigest, Provider<String> computation, String optionKey) {
+    try {
+      if (Files.exists(entry)) {
+        var content = Files.readString(entry, StandardCharsets.UTF_8);
+        int nl = content.indexOf('\n');
+        if (nl >= 0 && content.substring(0, nl).equals(inputsDigest)) {
+          return content.substring(nl + 1);
+        }
+      }
+
+      var value = computation.getOrNull();
+      if (value != null) {
+        write(entry, inputsDigest + "\n" + value);
+      } else {
+        Files.deleteIfExists(entry);
+      }
+      return value;
+    } catch (IOException e) {
+      throw new GradleException("Can't access the cached value of option: " + optionKey, e);
+    }
+  }
+
+  /** Writes the entry to a temporary file first and moves it in place. */
+  private static void write(Path entry, String content) throws IOException {
+    Files.createDirectories(entry.getParent());
+    var tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+    try {
+      Files.writeString(tmp, content, StandardCharsets.UTF_8);
+      Files.move(
+          tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * Resource limits (CPU quota, memory limit) imposed on the current process by Linux control
+ * groups, for example in containers. Both cgroup v2 (the unified hierarchy) and v1 are supported.
+ */
+final class Cgroups {
+  private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+  private static final Path PROC_SELF_CGROUP = Path.of("/proc/self/cgroup");
+
+  /** v1 limits at or above this value mean "unlimited" (it's the page-aligned Long.MAX_VALUE). */
+  private static final long V1_UNLIMITED_MEMORY = 0x7FFFFFFFFFFFF000L;
+
+  private Cgroups() {}
+
+  /** Returns the CPU limit of the current process (rounded up to whole cores), if any. */
+  static OptionalInt cpuLimit() {
+    return cpuLimit(CGROUP_ROOT, PROC_SELF_CGROUP);
+  }
+
+  /** Returns the memory limit of the current process (in bytes), if any. */
+  static OptionalLong memoryLimit() {
+    return memoryLimit(CGROUP_ROOT, PROC_SELF_CGROUP);
+  }
+
+  /**
+   * Returns the CPU limit imposed by cgroup quotas (rounded up to whole cores), if any: {@code
+   * cpu.max} in v2, {@code cpu.cfs_quota_us} and {@code cpu.cfs_period_us} in v1.
+   */
+  static OptionalInt cpuLimit(Path cgroupRoot, Path procSelfCgroup) {
+    var cgroupPaths = cgroupPaths(procSelfCgroup);
+
+    // cgroup v2: "cpu.max" contains "<quota|max> <period>".
+    for (var dir : candidateDirs(cgroupRoot, cgroupPaths.v2())) {
+      var cpuMax = readFirstLine(dir.resolve("cpu.max"));
+      if (cpuMax != null) {
+        var parts = cpuMax.split("\\s+");
+        if (parts.length == 2 && !parts[0].equals("max")) {
+          return quotaToCores(parseLong(parts[0]), parseLong(parts[1]));
+        }
+        return OptionalInt.empty();
+      }
+    }
+
+    for (var dir : v1ControllerDirs(cgroupRoot, "cpu", cgroupPaths.v1Cpu())) {
+      var quota = readFirstLine(dir.resolve("cpu.cfs_quota_us"));
+      var period = readFirstLine(dir.resolve("cpu.cfs_period_us"));
+      if (quota != null && period != null) {
+        return quotaToCores(parseLong(quota), parseLong(period));
+      }
+    }
+
+    return OptionalInt.empty();
+  }
+
+  /**
+   * Returns the memory limit (in bytes), if any: {@code memory.max} in v2, {@code
+   * memory.limit_in_bytes} in v1.
+   */
+  static OptionalLong memoryLimit(Path cgroupRoot, Path procSelfCgroup) {
+    var cgroupPaths = cgroupPaths(procSelfCgroup);
+
+    for (var dir : candidateDirs(cgroupRoot, cgroupPaths.v2())) {
+      var memoryMax = readFirstLine(dir.resolve("memory.max"));
+      if (memoryMax != null) {
+        long limit = parseLong(memoryMax);
+        return limit > 0 ? OptionalLong.of(limit) : OptionalLong.empty();
+      }
+    }
+
+    for (var dir : v1ControllerDirs(cgroupRoot, "memory", cgroupPaths.v1Memory())) {
+      var limitInBytes = readFirstLine(dir.resolve("memory.limit_in_bytes"));
+      if (limitInBytes != null) {
+        long limit = parseLong(limitInBytes);
+        return limit > 0 && limit < V1_UNLIMITED_MEMORY
+            ? OptionalLong.of(limit)
+            : OptionalLong.empty();
+      }
+    }
+
+    return OptionalLong.empty();
+  }
+
+  private record CgroupPaths(String v1Cpu, String v1Memory, String v2) {}
+
+  /** Parses the process's own cgroup paths from {@code /proc/self/cgroup}. */
+  private static CgroupPaths cgroupPaths(Path procSelfCgroup) {
+    String v1Cpu = "/";
+    String v1Memory = "/";
+    String v2 = "/";
+    try {
+      if (Files.isRegularFile(procSelfCgroup)) {
+        for (var line : Files.readAllLines(procSelfCgroup, StandardCharsets.UTF_8)) {
+          // hierarchy-id:controller-list:path
+          var parts = line.split(":", 3);
+          if (parts.length != 3) {
+            continue;
+          }
+          var controllers = List.of(parts[1].split(","));
+          if (parts[0].equals("0") && parts[1].isEmpty()) {
+            v2 = parts[2];
+          } else if (controllers.contains("cpu")) {
+            v1Cpu = parts[2];
+          } else if (controllers.contains("memory")) {
+            v1Memory = parts[2];
+          }
+        }
+      }
+    } catch (IOException e) {
+      // Fall back to the root of the hierarchy.
+    }
+    return new CgroupPaths(v1Cpu, v1Memory, v2);
+  }
+
+  /** Directories of a v1 controller, mounted under one of a few common names. */
+  private static List<Path> v1ControllerDirs(Path cgroupRoot, String controller, String path) {
+    var mounts =
+        controller.equals("cpu")
+            ? List.of("cpu", "cpu,cpuacct", "cpuacct,cpu")
+            : List.of(controller);
+    return mounts.stream()
+        .flatMap(mount -> candidateDirs(cgroupRoot.resolve(mount), path).stream())
+        .toList();
+  }
+
+  /**
+   * The process's own cgroup directory first, then the hierarchy's root (inside containers the
+   * process's cgroup path often isn't visible and the root is the container's cgroup).
+   */
+  private static List<Path> candidateDirs(Path root, String cgroupPath) {
+    var relative = cgroupPath.replaceFirst("^/+", "");
+    if (relative.isEmpty()) {
+      return List.of(root);
+    }
+    return List.of(root.resolve(relative), root);
+  }
+
+  private static OptionalInt quotaToCores(long quota, long period) {
+    if (quota <= 0 || period <= 0) {
+      return OptionalInt.empty();
+    }
+    return OptionalInt.of((int) Math.max(1, (quota + period - 1) / period));
+  }
+
+  private static long parseLong(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String readFirstLine(Path file) {
+    try {
+      if (Files.isRegularFile(file)) {
+        var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return lines.isEmpty() ? null : lines.get(0).trim();
+      }
+    } catch (IOException e) {
+      // Unreadable files are treated as absent.
+    }
+    return null;
+  }
+}
@@ -0,0 +1,35 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/** SHA-256 digests of option keys, values and input files. */
+final class Digests {
+  private Digests() {}
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Adds a string, terminated so that consecutive values can't be confused. */
+  static void update(MessageDigest md, String value) {
+    md.update(value.getBytes(StandardCharsets.UTF_8));
+    md.update((byte) 0);
+  }
+
+  static String hex(MessageDigest md) {
+    return HexFormat.of().formatHex(md.digest());
+  }
+
+  static String digest(String value) {
+    var md = sha256();
+    update(md, value);
+    return hex(md);
+  }
+}
@@ -0,0 +1,38 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Passes build options to forked test JVMs as system properties (see {@link
+ * BuildOptionsExtension#forwardToTests(String...)}). Only options that may affect test results are
+ * inputs of test tasks; untracked ones (verbosity, output flags) don't invalidate their cached
+ * results.
+ */
+public abstract class ForwardedTestOptions implements CommandLineArgumentProvider {
+  /** Options that are inputs of test tasks. */
+  @Input
+  public abstract MapProperty<String, String> getTrackedOptions();
+
+  /** Options that don't affect test results. */
+  @Internal
+  public abstract MapProperty<String, String> getUntrackedOptions();
+
+  @Override
+  public Iterable<String> asArguments() {
+    var all = new TreeMap<String, String>(getUntrackedOptions().get());
+    all.putAll(getTrackedOptions().get());
+
+    List<String> args = new ArrayList<>();
+    for (Map.Entry<String, String> e : all.entrySet()) {
+      args.add("-D" + e.getKey() + "=" + e.getValue());
+    }
+    return args;
+  }
+}
@@ -0,0 +1,187 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * An immutable matcher of a list of glob patterns ({@code *} matches any sequence of characters,
+ * {@code ?} any single character), the value of {@link BuildOptionType#PATTERNS} options.
+ *
+ * <p>All patterns are compiled into a single trie and matched as a nondeterministic automaton, so
+ * the cost of matching a string depends on its length and the number of patterns sharing its
+ * prefixes rather than on the total number of patterns. Matchers are cached by their (normalized)
+ * patterns, so all projects (and tasks) using equivalent values share one instance. The cache
+ * outlives builds in the Gradle daemon, so only the most recently used matchers are kept.
+ */
+public final class GlobMatcher implements Predicate<String>, Serializable {
+  @Serial private static final long serialVersionUID = 1L;
+
+  private static final int CACHE_SIZE = 256;
+
+  private static final Map<List<String>, GlobMatcher> cache =
+      Collections.synchronizedMap(
+          new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, GlobMatcher> eldest) {
+              return size() > CACHE_SIZE;
+            }
+          });
+
+  private static final class Node {
+    final int id;
+    final boolean isStar;
+    final Map<Character, Node> literals = new HashMap<>();
+    Node anyChar;
+    Node star;
+    boolean isFinal;
+
+    Node(int id, boolean isStar) {
+      this.id = id;
+      this.isStar = isStar;
+    }
+  }
+
+  @SuppressWarnings("serial") // Always an immutable (serializable) list.
+  private final List<String> patterns;
+  private transient Node root;
+  private transient int nodeCount;
+
+  private GlobMatcher(List<String> patterns) {
+    this.patterns = List.copyOf(patterns);
+    this.root = newNode(false);
+    for (var pattern : this.patterns) {
+      add(pattern);
+    }
+  }
+
+  /**
+   * Returns the (shared) matcher of a list of patterns separated with commas or whitespace. An
+   * empty list matches nothing.
+   */
+  public static GlobMatcher parse(String value) {
+    return of(Arrays.stream(value.split("[,\\s]+")).filter(p -> !p.isEmpty()).distinct().toList());
+  }
+
+  private static GlobMatcher of(List<String> patterns) {
+    return cache.computeIfAbsent(patterns, GlobMatcher::new);
+  }
+
+  /** Patterns of this matcher, in the order of declaration. */
+  public List<String> getPatterns() {
+    return patterns;
+  }
+
+  public boolean isEmpty() {
+    return patterns.isEmpty();
+  }
+
+  /** Returns true if the value matches any of the patterns. */
+  public boolean matches(String value) {
+    var current = new ArrayList<Node>();
+    var next = new ArrayList<Node>();
+    // The step in which each node was last added (plus one, as zero means never), to skip
+    // duplicates.
+    var added = new int[nodeCount];
+    addWithClosure(root, current, added, 0);
+
+    for (int i = 0; i < value.length() && !current.isEmpty(); i++) {
+      char chr = value.charAt(i);
+      int step = i + 1;
+      for (var node : current) {
+        if (node.isStar) {
+          addWithClosure(node, next, added, step);
+        }
+        var literal = node.literals.get(chr);
+        if (literal != null) {
+          addWithClosure(literal, next, added, step);
+        }
+        if (node.anyChar != null) {
+          addWithClosure(node.anyChar, next, added, step);
+        }
+      }
+      var swap = current;
+      current = next;
+      next = swap;
+      next.clear();
+    }
+
+    for (var node : current) {
+      if (node.isFinal) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean test(String value) {
+    return matches(value);
+  }
+
+  /** Adds the node and nodes reachable from it without consuming characters (star children). */
+  private static void addWithClosure(Node node, List<Node> nodes, int[] added, int step) {
+    while (node != null && added[node.id] != step + 1) {
+      added[node.id] = step + 1;
+      nodes.add(node);
+      node = node.star;
+    }
+  }
+
+  private void add(String pattern) {
+    var node = root;
+    for (int i = 0; i < pattern.length(); i++) {
+      char chr = pattern.charAt(i);
+      switch (chr) {
+        case '*' -> {
+          // Consecutive stars are equivalent to a single one.
+          if (!node.isStar) {
+            if (node.star == null) {
+              node.star = newNode(true);
+            }
+            node = node.star;
+          }
+        }
+        case '?' -> {
+          if (node.anyChar == null) {
+            node.anyChar = newNode(false);
+          }
+          node = node.anyChar;
+        }
+        default -> node = node.literals.computeIfAbsent(chr, c -> newNode(false));
+      }
+    }
+    node.isFinal = true;
+  }
+
+  private Node newNode(boolean isStar) {
+    return new Node(nodeCount++, isStar);
+  }
+
+  @Serial
+  private Object readResolve() {
+    return of(patterns);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof GlobMatcher matcher && patterns.equals(matcher.patterns);
+  }
+
+  @Override
+  public int hashCode() {
+    return patterns.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return String.join(",", patterns);
+  }
+}
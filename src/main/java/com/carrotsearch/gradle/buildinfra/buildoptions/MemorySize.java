@@ -0,0 +1,109 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.regex.Pattern;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+/**
+ * Values of {@link BuildOptionType#SIZE} options: a number of bytes with an optional binary unit
+ * suffix ({@code 1024}, {@code 512k}, {@code 512m}, {@code 2g}, {@code 1t}, also with a trailing
+ * {@code b}: {@code 512mb}) or a percentage of usable memory ({@code 25%}).
+ */
+public final class MemorySize {
+  private static final Pattern SIZE = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*([kmgt]?)b?");
+  private static final Pattern PERCENTAGE = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*%");
+
+  private MemorySize() {}
+
+  /**
+   * The amount of memory usable by the build (in bytes): the physical memory of the machine,
+   * further capped by the cgroup (v1 or v2) memory limit if the build runs in a container. This is
+   * a value source, so that the configuration cache is invalidated when the build moves to a
+   * machine with a different amount of memory.
+   */
+  public abstract static class UsableMemoryValueSource
+      implements ValueSource<Long, ValueSourceParameters.None> {
+    @Override
+    public Long obtain() {
+      return usableMemory(physicalMemory(), Cgroups.memoryLimit());
+    }
+  }
+
+  static long usableMemory(long physicalMemory, OptionalLong cgroupLimit) {
+    long memory = physicalMemory;
+    if (cgroupLimit.isPresent()) {
+      memory = memory > 0 ? Math.min(memory, cgroupLimit.getAsLong()) : cgroupLimit.getAsLong();
+    }
+    return memory;
+  }
+
+  private static long physicalMemory() {
+    if (ManagementFactory.getOperatingSystemMXBean()
+        instanceof com.sun.management.OperatingSystemMXBean os) {
+      return os.getTotalMemorySize();
+    }
+    return -1;
+  }
+
+  /** Returns true if the value is relative to usable memory (a percentage). */
+  static boolean isRelative(String value) {
+    return PERCENTAGE.matcher(value.trim()).matches();
+  }
+
+  /**
+   * Parses a size value into bytes, resolving percentages against the given amount of usable
+   * memory.
+   *
+   * @throws IllegalArgumentException if the value is not a valid size.
+   */
+  static long parse(String value, long usableMemory) {
+    var expression = value.trim().toLowerCase(Locale.ROOT);
+
+    var m = PERCENTAGE.matcher(expression);
+    if (m.matches()) {
+      if (usableMemory <= 0) {
+        throw new IllegalArgumentException("Usable memory is unknown, can't resolve: " + value);
+      }
+      return (long) (usableMemory * Double.parseDouble(m.group(1)) / 100);
+    }
+
+    m = SIZE.matcher(expression);
+    if (m.matches()) {
+      int shift =
+          switch (m.group(2)) {
+            case "" -> 0;
+            case "k" -> 10;
+            case "m" -> 20;
+            case "g" -> 30;
+            case "t" -> 40;
+            default -> throw new IllegalArgumentException("Unreachable: " + m.group(2));
+          };
+      return (long) (Double.parseDouble(m.group(1)) * (1L << shift));
+    }
+
+    throw new IllegalArgumentException("Not a memory size: " + value);
+  }
+
+  /**
+   * Formats a number of bytes using the largest binary unit that represents it exactly (for example
+   * {@code 512m}), as accepted by JVM options such as {@code -Xmx}.
+   */
+  public static String format(long bytes) {
+    for (var unit : new char[] {'t', 'g', 'm', 'k'}) {
+      int shift =
+          switch (unit) {
+            case 't' -> 40;
+            case 'g' -> 30;
+            case 'm' -> 20;
+            default -> 10;
+          };
+      if (bytes != 0 && bytes % (1L << shift) == 0) {
+        return (bytes >> shift) + String.valueOf(unit);
+      }
+    }
+    return Long.toString(bytes);
+  }
+}
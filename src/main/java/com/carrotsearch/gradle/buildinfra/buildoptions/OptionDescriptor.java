@@ -0,0 +1,115 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.gradle.api.GradleException;
+
+/**
+ * A lightweight, resolved snapshot of a single {@link BuildOption}. Projects publish these (as
+ * JSON files) so that the root project can display options of all projects without accessing
+ * their models directly.
+ *
+ * @param resolvedValue The value of parallelism and size options resolved to the number of workers
+ *     and bytes, which (unlike core-relative and percentage values) doesn't depend on the machine;
+ *     {@code null} for other options.
+ */
+public record OptionDescriptor(
+    String projectPath,
+    String name,
+    BuildOptionType type,
+    String description,
+    @Nullable String value,
+    @Nullable String resolvedValue,
+    @Nullable BuildOptionValueSource source,
+    @Nullable String origin,
+    @Nullable String defaultValue,
+    boolean isDefault)
+    implements Serializable {
+
+  static OptionDescriptor of(BuildOption option) {
+    var value = option.getValue().getOrNull();
+    var defaultValue = option.getDefaultValue().getOrNull();
+
+    String resolvedValue = null;
+    if (value != null
+        && (option.getType() == BuildOptionType.PARALLELISM
+            || option.getType() == BuildOptionType.SIZE)) {
+      try {
+        resolvedValue = option.asResolvedStringProvider().getOrNull();
+      } catch (GradleException e) {
+        // Invalid values are described as they are.
+      }
+    }
+
+    return new OptionDescriptor(
+        option.getProjectPath(),
+        option.getName(),
+        option.getType(),
+        option.getDescription(),
+        value == null ? null : value.value(),
+        resolvedValue,
+        value == null ? null : value.source(),
+        value == null ? null : value.origin(),
+        defaultValue == null ? null : defaultValue.value(),
+        value != null && value.equals(defaultValue));
+  }
+
+  Map<String, Object> toMap() {
+    var map = new LinkedHashMap<String, Object>();
+    map.put("project", projectPath);
+    map.put("name", name);
+    map.put("type", type.name());
+    map.put("description", description);
+    map.put("value", value);
+    map.put("resolvedValue", resolvedValue);
+    map.put("source", source == null ? null : source.name());
+    map.put("origin", origin);
+    map.put("defaultValue", defaultValue);
+    map.put("isDefault", isDefault);
+    return map;
+  }
+
+  static OptionDescriptor fromMap(Map<?, ?> map) {
+    var source = (String) map.get("source");
+    return new OptionDescriptor(
+        (String) map.get("project"),
+        (String) map.get("name"),
+        BuildOptionType.valueOf((String) map.get("type")),
+        (String) map.get("description"),
+        (String) map.get("value"),
+        (String) map.get("resolvedValue"),
+        source == null ? null : BuildOptionValueSource.valueOf(source),
+        (String) map.get("origin"),
+        (String) map.get("defaultValue"),
+        Boolean.TRUE.equals(map.get("isDefault")));
+  }
+
+  static void write(Collection<OptionDescriptor> descriptors, File file) {
+    var json = JsonOutput.toJson(descriptors.stream().map(OptionDescriptor::toMap).toList());
+    try {
+      Files.createDirectories(file.toPath().getParent());
+      Files.writeString(file.toPath(), JsonOutput.prettyPrint(json), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new GradleException("Can't write build option descriptors to: " + file, e);
+    }
+  }
+
+  static List<OptionDescriptor> read(File file) {
+    var descriptors = new ArrayList<OptionDescriptor>();
+    for (Object entry : (List<?>) new JsonSlurper().parse(file, StandardCharsets.UTF_8.name())) {
+      descriptors.add(fromMap((Map<?, ?>) entry));
+    }
+    return descriptors;
+  }
+}
@@ -0,0 +1,67 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.gradle.api.GradleException;
+
+/**
+ * Parsed build option property files. Each file is read and parsed once per build, so that
+ * per-option lookups (one value source per option) don't read the same file over and over.
+ *
+ * <p>Value sources can't reference build services, so parsed files are held in a static map. The
+ * map is cleared when a build finishes (see {@link BuildOptionsPlugin.OptionFilesCleanup}), so
+ * entries never outlive the build that read them.
+ */
+final class OptionFiles {
+  private static final Map<Path, Map<String, String>> files = new ConcurrentHashMap<>();
+
+  private OptionFiles() {}
+
+  /** Returns an immutable map of key-value pairs from the given file (empty if it doesn't exist). */
+  static Map<String, String> read(Path file) {
+    return files.computeIfAbsent(file, OptionFiles::load);
+  }
+
+  /** Forgets all files parsed in the current build. */
+  static void clear() {
+    files.clear();
+  }
+
+  private static Map<String, String> load(Path file) {
+    try {
+      return parse(file, Files.readAllBytes(file));
+    } catch (NoSuchFileException e) {
+      return Map.of();
+    } catch (IOException e) {
+      throw new GradleException("Can't read the " + file + " file.", e);
+    }
+  }
+
+  static Map<String, String> parse(Path file) {
+    try {
+      return parse(file, Files.readAllBytes(file));
+    } catch (IOException e) {
+      throw new GradleException("Can't read the " + file + " file.", e);
+    }
+  }
+
+  private static Map<String, String> parse(Path file, byte[] content) {
+    Map<String, String> options = new TreeMap<>();
+    try (var is = new ByteArrayInputStream(content)) {
+      var v = new Properties();
+      v.load(is);
+      v.stringPropertyNames().forEach(key -> options.put(key, v.getProperty(key)));
+    } catch (IOException e) {
+      throw new GradleException("Can't read the " + file + " file.", e);
+    }
+    return Collections.unmodifiableMap(options);
+  }
+}
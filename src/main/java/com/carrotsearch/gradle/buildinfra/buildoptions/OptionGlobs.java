@@ -0,0 +1,27 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.regex.Pattern;
+
+/** Glob patterns matching option names: {@code *} matches any sequence, {@code ?} any character. */
+final class OptionGlobs {
+  private OptionGlobs() {}
+
+  static Pattern toPattern(String glob) {
+    var regex = new StringBuilder();
+    int literalStart = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char chr = glob.charAt(i);
+      if (chr == '*' || chr == '?') {
+        if (i > literalStart) {
+          regex.append(Pattern.quote(glob.substring(literalStart, i)));
+        }
+        regex.append(chr == '*' ? ".*" : ".");
+        literalStart = i + 1;
+      }
+    }
+    if (literalStart < glob.length()) {
+      regex.append(Pattern.quote(glob.substring(literalStart)));
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
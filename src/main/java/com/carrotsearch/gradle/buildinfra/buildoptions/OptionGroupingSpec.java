@@ -8,8 +8,10 @@ public final class OptionGroupingSpec {
   private List<OptionGroup> optionGroups = new ArrayList<>();
   private String ungroupedDescription = "Other options";
 
-  public void group(String description, String pattern) {
-    optionGroups.add(new OptionGroup(Pattern.compile(pattern), description));
+  public OptionGroup group(String description, String pattern) {
+    var group = new OptionGroup(Pattern.compile(pattern), description);
+    optionGroups.add(group);
+    return group;
   }
 
   public void otherOptions(String description) {
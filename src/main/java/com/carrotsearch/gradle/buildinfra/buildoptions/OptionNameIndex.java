@@ -0,0 +1,108 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of option names for finding the names closest to a (mistyped) key. Names are kept in a
+ * BK-tree over the Levenshtein distance, so a lookup only visits subtrees that can contain names
+ * within the maximum distance instead of comparing the key with every name.
+ */
+final class OptionNameIndex {
+  private static final class Node {
+    final String name;
+    final Map<Integer, Node> children = new HashMap<>();
+
+    Node(String name) {
+      this.name = name;
+    }
+  }
+
+  private final Set<String> names = new HashSet<>();
+  private Node root;
+
+  /** Adds a name to the index (duplicates are ignored). */
+  void add(String name) {
+    if (!names.add(name)) {
+      return;
+    }
+    if (root == null) {
+      root = new Node(name);
+      return;
+    }
+    var node = root;
+    while (true) {
+      int distance = distance(name, node.name);
+      var child = node.children.get(distance);
+      if (child == null) {
+        node.children.put(distance, new Node(name));
+        return;
+      }
+      node = child;
+    }
+  }
+
+  boolean contains(String name) {
+    return names.contains(name);
+  }
+
+  /**
+   * Returns the names closest to the key, at most {@code maxDistance} edits away (sorted, empty if
+   * there are no such names).
+   */
+  List<String> nearest(String key, int maxDistance) {
+    var nearest = new ArrayList<String>();
+    if (root == null) {
+      return nearest;
+    }
+
+    int best = maxDistance;
+    var queue = new ArrayDeque<Node>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      var node = queue.poll();
+      int distance = distance(key, node.name);
+      if (distance < best) {
+        best = distance;
+        nearest.clear();
+      }
+      if (distance == best) {
+        nearest.add(node.name);
+      }
+      // By the triangle inequality, only children at distance (d - best, d + best) from this node
+      // can be within the best distance found so far.
+      for (var e : node.children.entrySet()) {
+        if (Math.abs(e.getKey() - distance) <= best) {
+          queue.add(e.getValue());
+        }
+      }
+    }
+    nearest.sort(null);
+    return nearest;
+  }
+
+  /** The Levenshtein (edit) distance between two strings. */
+  static int distance(String a, String b) {
+    var previous = new int[b.length() + 1];
+    var current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+      }
+      var swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[b.length()];
+  }
+}
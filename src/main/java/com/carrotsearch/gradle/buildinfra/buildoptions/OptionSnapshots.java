@@ -0,0 +1,99 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import groovy.json.JsonSlurper;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.gradle.api.GradleException;
+
+/**
+ * Parsed option snapshots: JSON files written by {@link BuildOptionsExportTask} (typically {@value
+ * BuildOptionsExportTask#ALL_OPTIONS_NAME}), replayed with {@value
+ * BuildOptionSources#REPLAY_PROPERTY}. A snapshot is read and parsed once per build: all options
+ * map their replayed values from a single value source (see {@link BuildOptionSources}).
+ *
+ * <p>Parallelism and size options are replayed with their resolved values (the number of workers
+ * or bytes), so that core-relative and percentage values are not re-evaluated on another machine.
+ * Options that had no value in the snapshot are pinned to no value.
+ */
+final class OptionSnapshots {
+  /**
+   * Option values keyed by project path and name. Options without a value are present in the maps,
+   * with a {@code null} value.
+   */
+  record Snapshot(Map<String, Map<String, String>> byProject, Map<String, String> byName)
+      implements Serializable {
+    /**
+     * Returns the option's value in the given project or, if the project isn't in the snapshot, the
+     * option's value if all projects in the snapshot agree on it. Options that had no value in the
+     * snapshot are pinned to an absent value; {@code null} is returned for options not in the
+     * snapshot at all.
+     */
+    @Nullable
+    BuildOptionValue valueOf(String projectPath, String name) {
+      var options = byProject.getOrDefault(projectPath, byName);
+      if (!options.containsKey(name)) {
+        return null;
+      }
+      return new BuildOptionValue(options.get(name), BuildOptionValueSource.REPLAYED_SNAPSHOT);
+    }
+  }
+
+  private OptionSnapshots() {}
+
+  static Snapshot read(Path file) {
+    byte[] content;
+    try {
+      content = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      throw new GradleException("The option snapshot to replay doesn't exist: " + file);
+    } catch (IOException e) {
+      throw new GradleException("Can't read the option snapshot: " + file, e);
+    }
+    return parse(file, content);
+  }
+
+  private static Snapshot parse(Path file, byte[] content) {
+    Object json;
+    try {
+      json = new JsonSlurper().parseText(new String(content, StandardCharsets.UTF_8));
+    } catch (RuntimeException e) {
+      throw new GradleException("Can't read the option snapshot: " + file, e);
+    }
+    if (!(json instanceof Map<?, ?> map) || !(map.get("options") instanceof List<?> options)) {
+      throw new GradleException("Not an option snapshot (an options export): " + file);
+    }
+
+    var byProject = new HashMap<String, Map<String, String>>();
+    var byName = new HashMap<String, String>();
+    var conflicting = new HashMap<String, Boolean>();
+    for (Object entry : options) {
+      var descriptor = OptionDescriptor.fromMap((Map<?, ?>) entry);
+      var value =
+          descriptor.resolvedValue() != null ? descriptor.resolvedValue() : descriptor.value();
+      byProject
+          .computeIfAbsent(descriptor.projectPath(), k -> new HashMap<>())
+          .put(descriptor.name(), value);
+
+      if (!byName.containsKey(descriptor.name())) {
+        byName.put(descriptor.name(), value);
+      } else if (!Objects.equals(byName.get(descriptor.name()), value)) {
+        conflicting.put(descriptor.name(), true);
+      }
+    }
+    conflicting.keySet().forEach(byName::remove);
+
+    byProject.replaceAll((k, v) -> Collections.unmodifiableMap(v));
+    return new Snapshot(
+        Collections.unmodifiableMap(byProject), Collections.unmodifiableMap(byName));
+  }
+}
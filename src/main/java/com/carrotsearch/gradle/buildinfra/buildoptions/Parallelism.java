@@ -0,0 +1,105 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.regex.Pattern;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+/**
+ * Values of {@link BuildOptionType#PARALLELISM} options: either a plain integer or an expression
+ * relative to the number of usable cores, for example {@code 0.5C}, {@code 2C}, {@code cores},
+ * {@code cores-1} or {@code cores/2}. Integers must be positive; expressions never resolve to less
+ * than 1.
+ */
+public final class Parallelism {
+  private static final Pattern MULTIPLIER = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*c");
+  private static final Pattern CORES_EXPRESSION =
+      Pattern.compile("cores(?:\\s*([-+*/])\\s*(\\d+(?:\\.\\d+)?))?");
+
+  private Parallelism() {}
+
+  /**
+   * The number of cores usable by the build: the number of processors available to the JVM,
+   * further capped by cgroup (v1 or v2) CPU quotas if the build runs in a container with a quota.
+   * This is a value source, so that the configuration cache is invalidated when the build moves to
+   * a machine with a different number of cores.
+   */
+  public abstract static class UsableCoresValueSource
+      implements ValueSource<Integer, ValueSourceParameters.None> {
+    @Override
+    public Integer obtain() {
+      var cgroupLimit = Cgroups.cpuLimit();
+      return usableCores(Runtime.getRuntime().availableProcessors(), cgroupLimit);
+    }
+  }
+
+  static int usableCores(int availableProcessors, OptionalInt cgroupLimit) {
+    int cores = availableProcessors;
+    if (cgroupLimit.isPresent()) {
+      cores = Math.min(cores, cgroupLimit.getAsInt());
+    }
+    return Math.max(1, cores);
+  }
+
+  /** Returns true if the value is relative to the number of usable cores (not an integer). */
+  static boolean isRelative(String value) {
+    return !isInteger(value.trim());
+  }
+
+  private static boolean isInteger(String expression) {
+    return !expression.isEmpty() && expression.chars().allMatch(Character::isDigit);
+  }
+
+  /**
+   * Evaluates a parallelism value against the given number of usable cores.
+   *
+   * @throws IllegalArgumentException if the value is not a valid parallelism expression.
+   */
+  static int evaluate(String value, int cores) {
+    var expression = value.trim().toLowerCase(Locale.ROOT);
+
+    if (isInteger(expression)) {
+      int parallelism;
+      try {
+        parallelism = Integer.parseInt(expression);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Parallelism out of range: " + value, e);
+      }
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("Parallelism must be at least 1: " + value);
+      }
+      return parallelism;
+    }
+
+    var m = MULTIPLIER.matcher(expression);
+    if (m.matches()) {
+      return atLeastOne(Double.parseDouble(m.group(1)) * cores);
+    }
+
+    m = CORES_EXPRESSION.matcher(expression);
+    if (m.matches()) {
+      if (m.group(1) == null) {
+        return cores;
+      }
+      double operand = Double.parseDouble(m.group(2));
+      if (m.group(1).equals("/") && operand == 0) {
+        throw new IllegalArgumentException("Division of cores by zero: " + value);
+      }
+      return atLeastOne(
+          switch (m.group(1)) {
+            case "+" -> cores + operand;
+            case "-" -> cores - operand;
+            case "*" -> cores * operand;
+            case "/" -> cores / operand;
+            default -> throw new IllegalArgumentException("Unreachable: " + m.group(1));
+          });
+    }
+
+    throw new IllegalArgumentException("Not a parallelism expression: " + value);
+  }
+
+  private static int atLeastOne(double v) {
+    return Math.max(1, (int) Math.floor(v));
+  }
+}
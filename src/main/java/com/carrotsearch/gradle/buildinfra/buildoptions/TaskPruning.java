@@ -0,0 +1,102 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+
+/**
+ * Removes tasks selected by boolean options (switches) from the task graph. Matching tasks are
+ * excluded the same way as with {@code -x}: they (and dependencies nothing else needs) are never
+ * scheduled, so they don't have their inputs snapshotted or show up as skipped.
+ *
+ * <p>Exclusions are added to the start parameter's excluded task paths, which Gradle only honors in
+ * the root build and reads before projects configured on demand are evaluated. Switches that are
+ * on therefore fail the build in included builds and with configure-on-demand rather than being
+ * silently ignored.
+ */
+final class TaskPruning {
+  /** Tasks (by name pattern or type) removed when the option is {@code true}. */
+  record Rule(String optionName, List<Pattern> names, List<Class<? extends Task>> types) {}
+
+  private TaskPruning() {}
+
+  /**
+   * Returns paths of tasks in the project matched by each rule's switch (keyed by option name, in
+   * the order of declaration).
+   */
+  static Map<String, List<String>> matchingTasks(Project project, List<Rule> rules) {
+    var matching = new LinkedHashMap<String, List<String>>();
+    for (var rule : rules) {
+      var names = new TreeSet<String>();
+      for (var name : project.getTasks().getNames()) {
+        if (rule.names().stream().anyMatch(p -> p.matcher(name).matches())) {
+          names.add(name);
+        }
+      }
+      for (var type : rule.types()) {
+        names.addAll(project.getTasks().withType(type).getNames());
+      }
+
+      var paths = matching.computeIfAbsent(rule.optionName(), k -> new ArrayList<>());
+      for (var name : names) {
+        var path = project.absoluteProjectPath(name);
+        if (!paths.contains(path)) {
+          paths.add(path);
+        }
+      }
+    }
+    return matching;
+  }
+
+  /**
+   * Excludes tasks of switches that are on from the task graph.
+   *
+   * @return States of all switches and the tasks they remove (or would remove).
+   */
+  static List<TaskSwitch> exclude(
+      Project project, BuildOptionsExtension options, List<Rule> rules) {
+    var switches = new ArrayList<TaskSwitch>();
+    var excluded = new LinkedHashSet<String>();
+    matchingTasks(project, rules)
+        .forEach(
+            (optionName, paths) -> {
+              boolean isOn = isOn(options, optionName);
+              if (isOn) {
+                excluded.addAll(paths);
+              }
+              switches.add(new TaskSwitch(optionName, isOn, List.copyOf(paths)));
+            });
+
+    if (!excluded.isEmpty()) {
+      var startParameter = project.getGradle().getStartParameter();
+      if (project.getGradle().getParent() != null) {
+        throw new GradleException(
+            "Task switches can't remove tasks of included builds (use -x instead): "
+                + String.join(", ", excluded));
+      }
+      if (startParameter.isConfigureOnDemand()) {
+        throw new GradleException(
+            "Task switches can't remove tasks with configure-on-demand enabled (use -x instead): "
+                + String.join(", ", excluded));
+      }
+      var excludedTaskNames = new LinkedHashSet<>(startParameter.getExcludedTaskNames());
+      excludedTaskNames.addAll(excluded);
+      startParameter.setExcludedTaskNames(excludedTaskNames);
+    }
+    return switches;
+  }
+
+  static boolean isOn(BuildOptionsExtension options, String optionName) {
+    if (!options.hasOption(optionName)) {
+      throw new GradleException("Task switch refers to an unknown build option: " + optionName);
+    }
+    return options.getOption(optionName).asBooleanProvider().getOrElse(false);
+  }
+}
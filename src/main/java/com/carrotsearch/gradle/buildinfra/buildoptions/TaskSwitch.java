@@ -0,0 +1,11 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A boolean option bound to tasks it removes from the task graph (see {@link
+ * BuildOptionsExtension#pruneTasks(String, String...)}), with its current state.
+ */
+public record TaskSwitch(String optionName, boolean isOn, List<String> tasks)
+    implements Serializable {}
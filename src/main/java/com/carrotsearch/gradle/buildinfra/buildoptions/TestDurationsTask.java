@@ -0,0 +1,106 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+
+/**
+ * Updates historical test class durations (used to balance test shards, see {@link TestSharding})
+ * from JUnit XML reports of tests that ran in this build. Durations of classes that didn't run
+ * (for example, because they belong to other shards) are preserved.
+ */
+@UntrackedTask(because = "New durations are merged into the existing durations file.")
+public abstract class TestDurationsTask extends DefaultTask {
+  public static final String NAME = "updateTestDurations";
+
+  /** Directories with JUnit XML reports ({@code TEST-*.xml} files). */
+  @Internal
+  public abstract ConfigurableFileCollection getJunitXmlReports();
+
+  @Internal
+  public abstract RegularFileProperty getDurationsFile();
+
+  public TestDurationsTask() {
+    setDescription("Updates test class durations used to balance test shards");
+    setGroup(BuildOptionsTask.BUILD_OPTIONS_TASK_GROUP);
+  }
+
+  @TaskAction
+  public void exec() {
+    var durationsFile = getDurationsFile().get().getAsFile().toPath();
+    var durations = TestSharding.readDurations(durationsFile);
+
+    int updated = 0;
+    for (File dir : getJunitXmlReports().getFiles()) {
+      var reports = dir.listFiles((d, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+      if (reports == null) {
+        continue;
+      }
+      for (var report : reports) {
+        var suite = readSuite(report);
+        if (suite != null) {
+          durations.put(TestSharding.topLevelClassName(suite.name() + ".class"), suite.seconds());
+          updated++;
+        }
+      }
+    }
+
+    var lines = new ArrayList<String>();
+    lines.add("# Test class durations (seconds), used to balance test shards.");
+    lines.addAll(TestSharding.formatDurations(durations));
+    try {
+      if (durationsFile.getParent() != null) {
+        Files.createDirectories(durationsFile.getParent());
+      }
+      Files.write(durationsFile, lines, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new GradleException("Can't write test durations to: " + durationsFile, e);
+    }
+
+    getLogger().lifecycle("Updated durations of {} test classes in {}", updated, durationsFile);
+  }
+
+  private record Suite(String name, double seconds) {}
+
+  /** Reads the name and time attributes of the report's root {@code testsuite} element. */
+  private static Suite readSuite(File report) {
+    var factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    try (InputStream is = Files.newInputStream(report.toPath())) {
+      var reader = factory.createXMLStreamReader(is);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+            if (!reader.getLocalName().equals("testsuite")) {
+              return null;
+            }
+            var name = reader.getAttributeValue(null, "name");
+            var time = reader.getAttributeValue(null, "time");
+            if (name == null || time == null) {
+              return null;
+            }
+            return new Suite(name, Double.parseDouble(time));
+          }
+        }
+        return null;
+      } finally {
+        reader.close();
+      }
+    } catch (IOException | XMLStreamException | NumberFormatException e) {
+      throw new GradleException("Can't read JUnit XML report: " + report, e);
+    }
+  }
+}
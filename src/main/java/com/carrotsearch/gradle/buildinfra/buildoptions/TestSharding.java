@@ -0,0 +1,274 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.gradle.api.GradleException;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Splits test execution into shards (for running them on multiple CI nodes). Each {@link Test}
+ * task only runs the test classes assigned to the current shard ({@value #SHARD_INDEX_OPTION} of
+ * {@value #SHARD_COUNT_OPTION}).
+ *
+ * <p>The partition is deterministic and balanced: test classes are assigned to shards greedily,
+ * longest first, using historical durations from the {@value #DURATIONS_OPTION} file (see {@link
+ * TestDurationsTask}). Classes without a recorded duration (new tests or helper classes that never
+ * ran as tests) are dealt to shards in turns.
+ *
+ * <p>The classes assigned to a shard (rather than the durations file) are an input of each test
+ * task, so updated durations only re-run shards whose classes changed.
+ */
+public final class TestSharding {
+  public static final String SHARD_INDEX_OPTION = "tests.shard.index";
+  public static final String SHARD_COUNT_OPTION = "tests.shard.count";
+  public static final String DURATIONS_OPTION = "tests.shard.durations";
+  public static final String DEFAULT_DURATIONS_FILE = "test-durations.properties";
+  private static final String SHARD_CLASSES_INPUT = "tests.shard.classes";
+
+  private TestSharding() {}
+
+  static void apply(Project project, BuildOptionsExtension options) {
+    if (options.hasOption(SHARD_COUNT_OPTION)) {
+      return;
+    }
+
+    var shardIndex =
+        options.addIntOption(SHARD_INDEX_OPTION, "Test shard to run (0-based index).", 0);
+    var shardCount = options.addIntOption(SHARD_COUNT_OPTION, "The number of test shards.", 1);
+    var durations =
+        options.addFileOption(
+            DURATIONS_OPTION,
+            "Historical test class durations, used to balance test shards.",
+            project.getLayout().getProjectDirectory().file(DEFAULT_DURATIONS_FILE));
+
+    var providers = project.getProviders();
+    var junitXmlReports = project.getObjects().fileCollection();
+    var tests = project.getTasks().withType(Test.class);
+    tests.configureEach(
+        test -> {
+          var otherShards =
+              new OtherShardsSpec(
+                  test.getPath(), shardIndex, shardCount, test.getTestClassesDirs(), durations);
+          // Derived from the test classes dirs, so that the assignment is computed when the test
+          // task runs, after test classes are compiled (and not when the configuration cache
+          // entry is stored).
+          test.getInputs()
+              .property(
+                  SHARD_CLASSES_INPUT,
+                  test.getTestClassesDirs()
+                      .getElements()
+                      .map(dirs -> otherShards.shardClassNames()));
+          test.exclude(otherShards);
+
+          var location = test.getReports().getJunitXml().getOutputLocation();
+          junitXmlReports.from(providers.provider(() -> location.get().getAsFile()));
+        });
+
+    project
+        .getTasks()
+        .register(
+            TestDurationsTask.NAME,
+            TestDurationsTask.class,
+            task -> {
+              task.getDurationsFile().convention(durations);
+              // Collect reports of tests that ran in this build, but don't force them to run.
+              task.mustRunAfter(tests);
+              task.getJunitXmlReports().from(junitXmlReports);
+            });
+  }
+
+  /** Excludes test classes assigned to other shards. */
+  static final class OtherShardsSpec implements Spec<FileTreeElement> {
+    private final String taskPath;
+    private final Provider<Integer> shardIndex;
+    private final Provider<Integer> shardCount;
+    private final FileCollection testClassesDirs;
+    private final Provider<RegularFile> durationsFile;
+
+    /** Classes of the current shard, computed once (and not stored in the configuration cache). */
+    private transient Set<String> shardClasses;
+
+    OtherShardsSpec(
+        String taskPath,
+        Provider<Integer> shardIndex,
+        Provider<Integer> shardCount,
+        FileCollection testClassesDirs,
+        Provider<RegularFile> durationsFile) {
+      this.taskPath = taskPath;
+      this.shardIndex = shardIndex;
+      this.shardCount = shardCount;
+      this.testClassesDirs = testClassesDirs;
+      this.durationsFile = durationsFile;
+    }
+
+    @Override
+    public boolean isSatisfiedBy(FileTreeElement element) {
+      var path = element.getRelativePath().getPathString();
+      if (element.isDirectory() || !path.endsWith(".class")) {
+        return false;
+      }
+      var classes = shardClasses();
+      return classes != null && !classes.contains(topLevelClassName(path));
+    }
+
+    /** Sorted names of classes assigned to the current shard (empty if tests aren't sharded). */
+    List<String> shardClassNames() {
+      var classes = shardClasses();
+      return classes == null ? List.of() : List.copyOf(new TreeSet<>(classes));
+    }
+
+    private synchronized Set<String> shardClasses() {
+      int count = shardCount.get();
+      if (count <= 1) {
+        return null;
+      }
+      if (shardClasses == null) {
+        int index = shardIndex.get();
+        if (index < 0 || index >= count) {
+          throw new GradleException(
+              String.format(
+                  Locale.ROOT,
+                  "Test shard index must be between 0 and %d (exclusive) but was %d (task %s).",
+                  count,
+                  index,
+                  taskPath));
+        }
+
+        var classes = new TreeSet<String>();
+        for (File dir : testClassesDirs.getFiles()) {
+          classes.addAll(listClasses(dir.toPath()));
+        }
+        var durations = readDurations(durationsFile.get().getAsFile().toPath());
+        shardClasses = partition(classes, durations, count).get(index);
+      }
+      return shardClasses;
+    }
+  }
+
+  /**
+   * Assigns classes to shards. Classes with a recorded duration (tests that ran before) are assigned
+   * using the longest-processing-time-first rule: classes sorted by decreasing duration (then by
+   * name) go to the currently least loaded shard (then the lowest index). Other classes may be new
+   * tests but also helper classes that never run as tests, so they don't count towards the load:
+   * they are dealt to shards in turns, in name order. The result only depends on the class names
+   * and durations, so every CI node computes the same partition.
+   */
+  static Map<Integer, Set<String>> partition(
+      Set<String> classes, Map<String, Double> durations, int shardCount) {
+    var ordered =
+        classes.stream()
+            .filter(durations::containsKey)
+            .sorted(
+                Comparator.comparingDouble((String c) -> durations.get(c))
+                    .reversed()
+                    .thenComparing(Comparator.naturalOrder()))
+            .toList();
+
+    record Shard(int index, double load) {}
+    var shards =
+        new PriorityQueue<Shard>(
+            Comparator.comparingDouble(Shard::load).thenComparingInt(Shard::index));
+    var assigned = new TreeMap<Integer, Set<String>>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new Shard(i, 0));
+      assigned.put(i, new HashSet<>());
+    }
+
+    for (var clazz : ordered) {
+      var shard = shards.poll();
+      assigned.get(shard.index()).add(clazz);
+      shards.add(new Shard(shard.index(), shard.load() + durations.get(clazz)));
+    }
+
+    int next = 0;
+    for (var clazz : new TreeSet<>(classes)) {
+      if (!durations.containsKey(clazz)) {
+        assigned.get(next).add(clazz);
+        next = (next + 1) % shardCount;
+      }
+    }
+    return assigned;
+  }
+
+  /** Reads class durations (in seconds), an empty map if the file doesn't exist. */
+  static Map<String, Double> readDurations(Path file) {
+    var durations = new TreeMap<String, Double>();
+    if (!Files.isRegularFile(file)) {
+      return durations;
+    }
+
+    var properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    } catch (IOException e) {
+      throw new GradleException("Can't read test durations from: " + file, e);
+    }
+    properties.forEach(
+        (k, v) -> {
+          try {
+            durations.put((String) k, Double.parseDouble(((String) v).trim()));
+          } catch (NumberFormatException e) {
+            // Ignore malformed entries, they only affect balancing.
+          }
+        });
+    return durations;
+  }
+
+  private static Set<String> listClasses(Path dir) {
+    var classes = new HashSet<String>();
+    if (!Files.isDirectory(dir)) {
+      return classes;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths
+          .filter(p -> p.getFileName().toString().endsWith(".class"))
+          .forEach(p -> classes.add(topLevelClassName(dir.relativize(p).toString())));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return classes;
+  }
+
+  /** Nested classes belong to the same shard as their top-level class. */
+  static String topLevelClassName(String classFilePath) {
+    var name =
+        classFilePath
+            .substring(0, classFilePath.length() - ".class".length())
+            .replace('\\', '/')
+            .replace('/', '.');
+    int nested = name.indexOf('$');
+    return nested >= 0 ? name.substring(0, nested) : name;
+  }
+
+  /** Formats class durations (in seconds) as sorted property file lines. */
+  static List<String> formatDurations(Map<String, Double> durations) {
+    var lines = new ArrayList<String>();
+    new TreeMap<>(durations)
+        .forEach(
+            (name, seconds) -> lines.add(String.format(Locale.ROOT, "%s=%.3f", name, seconds)));
+    return lines;
+  }
+}
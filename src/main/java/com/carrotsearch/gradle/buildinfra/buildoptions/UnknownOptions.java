@@ -0,0 +1,155 @@
+package com.carrotsearch.gradle.buildinfra.buildoptions;
+
+import static com.carrotsearch.gradle.buildinfra.buildoptions.BuildOptionsPlugin.BUILD_OPTIONS_FILE;
+import static com.carrotsearch.gradle.buildinfra.buildoptions.BuildOptionsPlugin.LOCAL_BUILD_OPTIONS_FILE;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.provider.SetProperty;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+
+/**
+ * Detects keys that look like build options but don't match any option declared in the build (for
+ * example {@code -Ptest.jvms=16} instead of {@code tests.jvms}), with suggestions of the closest
+ * option names.
+ *
+ * <p>All keys of build option files must be declared options (or profile values of declared
+ * options). Project and system properties passed on the command line are also used for other
+ * purposes, so they are only reported when they are close to (but not the same as) an option name.
+ *
+ * <p>Option names are collected by {@link BuildOptionNamesService}. Option files are scanned in a
+ * value source, so that only the list of unknown keys (not whole files) becomes a configuration
+ * cache input.
+ */
+public final class UnknownOptions {
+  private static final Logger LOGGER = Logging.getLogger(UnknownOptions.class);
+
+  private UnknownOptions() {}
+
+  /** Returns descriptions of keys in build option files that aren't declared options. */
+  public abstract static class OptionFileKeysValueSource
+      implements ValueSource<List<String>, OptionFileKeysValueSource.Parameters> {
+    public List<String> obtain() {
+      var params = getParameters();
+      var index = new OptionNameIndex();
+      params.getOptionNames().get().forEach(index::add);
+
+      var rootDirectory = params.getRootDirectory().get().getAsFile().toPath();
+      var problems = new ArrayList<String>();
+      for (var file : params.getOptionFiles()) {
+        var origin = rootDirectory.relativize(file.toPath()).toString().replace('\\', '/');
+        for (var key : OptionFiles.read(file.toPath()).keySet()) {
+          var name = optionName(key);
+          if (!index.contains(name)) {
+            problems.add(describe(index, key, name, "key in " + origin));
+          }
+        }
+      }
+      return problems;
+    }
+
+    public abstract static class Parameters implements ValueSourceParameters {
+      abstract SetProperty<String> getOptionNames();
+
+      abstract ConfigurableFileCollection getOptionFiles();
+
+      abstract DirectoryProperty getRootDirectory();
+    }
+  }
+
+  static void check(
+      Gradle gradle,
+      ProviderFactory providers,
+      File rootDirectory,
+      Provider<BuildOptionNamesService> namesService,
+      BuildOptionsSettingsExtension.UnknownOptionPolicy policy) {
+    if (policy == BuildOptionsSettingsExtension.UnknownOptionPolicy.IGNORE) {
+      return;
+    }
+
+    var names = namesService.get();
+    var optionNames = names.getOptionNames();
+    var index = new OptionNameIndex();
+    optionNames.forEach(index::add);
+
+    var problems = new ArrayList<String>();
+    var startParameter = gradle.getStartParameter();
+    checkProperties(index, startParameter.getProjectProperties(), "project property", problems);
+    checkProperties(index, startParameter.getSystemPropertiesArgs(), "system property", problems);
+
+    var optionFiles = new ArrayList<File>();
+    for (var dir : names.getOptionFileDirs()) {
+      for (var fileName : List.of(BUILD_OPTIONS_FILE, LOCAL_BUILD_OPTIONS_FILE)) {
+        optionFiles.add(new File(dir, fileName));
+      }
+    }
+    problems.addAll(
+        providers
+            .of(
+                OptionFileKeysValueSource.class,
+                spec -> {
+                  var params = spec.getParameters();
+                  params.getOptionNames().set(optionNames);
+                  params.getOptionFiles().from(optionFiles);
+                  params.getRootDirectory().set(rootDirectory);
+                })
+            .get());
+
+    if (problems.isEmpty()) {
+      return;
+    }
+    if (policy == BuildOptionsSettingsExtension.UnknownOptionPolicy.FAIL) {
+      throw new GradleException("Unknown build options:\n  " + String.join("\n  ", problems));
+    }
+    problems.forEach(LOGGER::warn);
+  }
+
+  private static void checkProperties(
+      OptionNameIndex index, Map<String, String> properties, String kind, List<String> problems) {
+    for (var key : properties.keySet()) {
+      if (key.startsWith("buildOptions.") || key.startsWith("org.gradle.") || index.contains(key)) {
+        continue;
+      }
+      if (!index.nearest(key, maxDistance(key)).isEmpty()) {
+        problems.add(describe(index, key, key, kind));
+      }
+    }
+  }
+
+  /** Strips the profile prefix ({@code profiles.<name>.}) of profile keys. */
+  private static String optionName(String key) {
+    if (key.startsWith(BuildOptionSources.PROFILE_KEY_PREFIX)) {
+      int dot = key.indexOf('.', BuildOptionSources.PROFILE_KEY_PREFIX.length());
+      if (dot > 0) {
+        return key.substring(dot + 1);
+      }
+    }
+    return key;
+  }
+
+  private static String describe(OptionNameIndex index, String key, String name, String kind) {
+    var message = String.format(Locale.ROOT, "Unknown build option '%s' (%s)", key, kind);
+    var suggestions = index.nearest(name, maxDistance(name));
+    if (!suggestions.isEmpty()) {
+      message += ", did you mean: " + String.join(", ", suggestions) + "?";
+    }
+    return message;
+  }
+
+  /** Allow roughly one typo per four characters (at least one, at most three). */
+  private static int maxDistance(String key) {
+    return Math.min(3, Math.max(1, key.length() / 4));
+  }
+}
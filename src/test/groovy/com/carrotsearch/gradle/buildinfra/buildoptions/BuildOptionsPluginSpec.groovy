@@ -295,4 +295,1177 @@ Other options
 a02 = [empty]  # a02 description (in ':')
         """)
     }
+
+    def "settings plugin applies build options to all projects and shares option sources"() {
+        given:
+        Files.createDirectories(testProjectDir.toPath().resolve("subproject-1"))
+        Files.writeString(testProjectDir.toPath().resolve("build-options.properties"), "a01=from-file\n")
+
+        settingsFile("""
+        plugins {
+          id('com.carrotsearch.gradle.opts.settings')
+        }
+
+        include("subproject-1")
+        """)
+
+        buildFile(
+                """
+        allprojects {
+          buildOptions {
+            addOption("a01", "a01 description", "default-value-a01")
+          }
+        }
+        """)
+
+        when:
+        def result = gradleRunner()
+                .withArguments(":subproject-1:buildOptions", "--configuration-cache")
+                .build()
+
+        then:
+        containsLines(result.output, """
+        a01 = from-file # a01 description (source: build-options.properties file)
+        """)
+        result.task(":subproject-1:buildOptions").outcome == TaskOutcome.SUCCESS
+    }
+
+    def "identical options share one canonical value across projects"() {
+        given:
+        Files.createDirectories(testProjectDir.toPath().resolve("subproject-1"))
+        Files.createDirectories(testProjectDir.toPath().resolve("subproject-2"))
+
+        settingsFile("""
+        plugins {
+          id('com.carrotsearch.gradle.opts.settings')
+        }
+
+        buildOptions {
+          shareIdenticalOptions = true
+        }
+
+        include("subproject-1")
+        include("subproject-2")
+        """)
+
+        buildFile(
+                """
+        subprojects {
+          buildOptions {
+            addIntOption("tests.jvms", "Number of forked test JVMs", 4)
+          }
+
+          tasks.register("printOptions", {
+            def jvms = buildOptions['tests.jvms']
+            doLast {
+              logger.lifecycle(project.path + " tests.jvms: " + jvms.get())
+            }
+          })
+        }
+
+        gradle.projectsEvaluated {
+          def values = subprojects.collect { it.buildOptions.getOption("tests.jvms").value.get() }
+          logger.lifecycle("one canonical value: " + values[0].is(values[1]))
+        }
+        """)
+
+        when:
+        def result = gradleRunner()
+                .withArguments("printOptions", "-Ptests.jvms=2", "--configuration-cache")
+                .build()
+
+        then:
+        containsLines(result.output, ":subproject-1 tests.jvms: 2")
+        containsLines(result.output, ":subproject-2 tests.jvms: 2")
+        containsLines(result.output, "one canonical value: true")
+    }
+
+    def "allOptions task should work with isolated projects"() {
+        given:
+        Files.createDirectories(testProjectDir.toPath().resolve("subproject-1"))
+        Files.createDirectories(testProjectDir.toPath().resolve("subproject-2"))
+
+        settingsFile("""
+        include("subproject-1")
+        include("subproject-2")
+        """)
+
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+            addOption("a01", "a01 description")
+        }
+        """)
+
+        Files.writeString(testProjectDir.toPath().resolve("subproject-1/build.gradle"), """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+            addOption("a02", "a02 description", "a02-value")
+        }
+        """)
+
+        when:
+        def result = gradleRunner()
+                .withArguments(":allOptions", "-Dorg.gradle.unsafe.isolated-projects=true")
+                .build()
+
+        then:
+        containsLines(result.output, """
+        Configurable build options in 2 projects:
+
+        a01 = [empty]  # a01 description (in ':')
+        a02 = a02-value # a02 description (in ':subproject-1')
+        """)
+    }
+
+    def "lazily registered options are realized only when queried"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<String> a01 = buildOptions.registerOption("a01", "a01 description", "default-value-a01")
+        Provider<Integer> a02 = buildOptions.registerIntOption("a02", "a02 description", 3)
+
+        def realized = []
+        buildOptions.allOptions.configureEach { realized.add(it.name) }
+        logger.lifecycle("realized: " + realized + ", has a02: " + buildOptions.hasOption("a02"))
+
+        tasks.register("printOptions", {
+          doLast {
+            logger.lifecycle("a01: " + a01.get())
+            logger.lifecycle("a02: " + a02.get())
+          }
+        })
+        """)
+
+        when:
+        def result = gradleRunner()
+                .withArguments("printOptions", "-Pa02=5")
+                .run()
+
+        then:
+        containsLines(result.output, """
+          realized: [], has a02: true
+        """)
+        containsLines(result.output, """
+          a01: default-value-a01
+          a02: 5
+        """)
+        result.task(":printOptions").outcome == TaskOutcome.SUCCESS
+    }
+
+    def "editing unrelated keys in option files does not invalidate the configuration cache"() {
+        given:
+        def localOptions = testProjectDir.toPath().resolve("build-options.local.properties")
+        Files.writeString(localOptions, "a01=value-1\nunrelated=1\n")
+
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<String> a01 = buildOptions.addOption("a01", "a01 description")
+        logger.lifecycle("a01 at configuration time: " + a01.get())
+
+        tasks.register("noop", {})
+        """)
+
+        when:
+        gradleRunner().withArguments("noop", "--configuration-cache").build()
+        Files.writeString(localOptions, "a01=value-1\nunrelated=2\n")
+        def unrelatedChange = gradleRunner().withArguments("noop", "--configuration-cache").build()
+        Files.writeString(localOptions, "a01=value-2\nunrelated=2\n")
+        def optionChange = gradleRunner().withArguments("noop", "--configuration-cache").build()
+
+        then:
+        unrelatedChange.output.contains("Reusing configuration cache.")
+        !optionChange.output.contains("Reusing configuration cache.")
+        containsLines(optionChange.output, "a01 at configuration time: value-2")
+    }
+
+    def "option usage tracking reports configuration-time options that changed"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<String> a01 = buildOptions.addOption("a01", "a01 description", "default")
+        Provider<String> a02 = buildOptions.addOption("a02", "a02 description", "default")
+        logger.lifecycle("a01 at configuration time: " + a01.get())
+
+        tasks.register("printOptions", {
+          doLast {
+            logger.lifecycle("a02 at execution time: " + a02.get())
+          }
+        })
+        """)
+
+        when:
+        gradleRunner().withArguments("printOptions", "-PbuildOptions.trackUsage=true", "-Pa01=x").build()
+        def changed = gradleRunner().withArguments("printOptions", "-PbuildOptions.trackUsage=true", "-Pa01=y").build()
+        def report = gradleRunner().withArguments("buildOptionsUsage").build()
+
+        then:
+        containsLines(changed.output,
+                "Build options read at configuration time that changed since the last configuration: a01")
+        containsLines(report.output,
+                "a01 = y        (source: GRADLE_PROPERTY, changed since last configuration)")
+        containsLines(report.output,
+                "a02 = default  (source: EXPLICIT_VALUE)")
+    }
+
+    def "option usage tracking classifies reads in lazily configured tasks as configuration-time"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<String> a01 = buildOptions.addOption("a01", "a01 description", "default")
+        Provider<String> a02 = buildOptions.addOption("a02", "a02 description", "default")
+
+        tasks.register("printOptions", {
+          def a01Value = a01.get()
+          doLast {
+            logger.lifecycle("a01 in task configuration: " + a01Value)
+            logger.lifecycle("a02 at execution time: " + a02.get())
+          }
+        })
+        """)
+
+        when:
+        gradleRunner().withArguments("printOptions", "-PbuildOptions.trackUsage=true").build()
+        def report = gradleRunner().withArguments("buildOptionsUsage").build()
+        def output = report.output.normalize()
+        def configurationReads = output.substring(
+                output.indexOf("Options read at configuration time"),
+                output.indexOf("Options read at execution time"))
+        def executionReads = output.substring(output.indexOf("Options read at execution time"))
+
+        then:
+        configurationReads.contains("a01 = default")
+        !configurationReads.contains("a02")
+        executionReads.contains("a02 = default")
+        !executionReads.contains("a01")
+    }
+
+    def "cached options are computed once until their inputs change"() {
+        given:
+        def input = testProjectDir.toPath().resolve("input.txt")
+        Files.writeString(input, "1")
+
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        def counter = file("counter.txt")
+        Provider<String> rev = buildOptions.addCachedOption("git.rev", "Expensive computation") {
+          value = providers.provider {
+            counter.text = String.valueOf((counter.exists() ? counter.text as int : 0) + 1)
+            return "rev-" + counter.text
+          }
+          inputFiles("input.txt")
+          cacheVersion = providers.gradleProperty("computation.version").orElse("1")
+        }
+
+        tasks.register("printOptions", {
+          doLast {
+            logger.lifecycle("git.rev: " + rev.get())
+          }
+        })
+        """)
+
+        when:
+        def first = gradleRunner().withArguments("printOptions").build()
+        def second = gradleRunner().withArguments("printOptions").build()
+        Files.writeString(input, "2")
+        def third = gradleRunner().withArguments("printOptions").build()
+        def newVersion = gradleRunner().withArguments("printOptions", "-Pcomputation.version=2").build()
+
+        then:
+        containsLines(first.output, "git.rev: rev-1")
+        containsLines(second.output, "git.rev: rev-1")
+        containsLines(third.output, "git.rev: rev-2")
+        containsLines(newVersion.output, "git.rev: rev-3")
+    }
+
+    def "cached options read at configuration time are configuration cache inputs"() {
+        given:
+        def input = testProjectDir.toPath().resolve("input.txt")
+        Files.writeString(input, "1")
+        Files.createDirectories(testProjectDir.toPath().resolve("sub"))
+        settingsFile("""
+        rootProject.name = 'test'
+        include 'sub'
+        """)
+
+        def script = { String prefix ->
+            """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<String> rev = buildOptions.addCachedOption("git.rev", "Expensive computation") {
+          // Doesn't read the input file itself, so only the cache key tracks it.
+          value = providers.provider { "${prefix}-" + UUID.randomUUID() }
+          inputFiles(rootProject.file("input.txt"))
+        }
+        logger.lifecycle(project.path + " git.rev: " + rev.get())
+
+        tasks.register("noop", {})
+        """
+        }
+        buildFile(script("root"))
+        Files.writeString(testProjectDir.toPath().resolve("sub/build.gradle"), script("sub"))
+
+        when:
+        def first = gradleRunner().withArguments("noop", "--configuration-cache").build()
+        def reused = gradleRunner().withArguments("noop", "--configuration-cache").build()
+        Files.writeString(input, "2")
+        def changed = gradleRunner().withArguments("noop", "--configuration-cache").build()
+
+        def revOf = { String output, String path ->
+            output.readLines().find { it.startsWith(path + " git.rev: ") }
+        }
+
+        then:
+        revOf(first.output, ":").startsWith(": git.rev: root-")
+        revOf(first.output, ":sub").startsWith(":sub git.rev: sub-")
+        reused.output.contains("Reusing configuration cache.")
+        !changed.output.contains("Reusing configuration cache.")
+        revOf(changed.output, ":").startsWith(": git.rev: root-")
+        revOf(changed.output, ":") != revOf(first.output, ":")
+    }
+
+    def "parallelism options resolve core-relative expressions"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<Integer> cores = buildOptions.addParallelismOption("cores", "Usable cores.", "cores")
+        Provider<Integer> jvms = buildOptions.addParallelismOption("tests.jvms", "Forked test JVMs.", "0.5C")
+        Provider<Integer> workers = buildOptions.addParallelismOption("max.workers", "Workers.", "4")
+
+        tasks.register("printOptions", {
+          doLast {
+            def c = cores.get()
+            logger.lifecycle("half of the cores: " + (jvms.get() == Math.max(1, c.intdiv(2))))
+            logger.lifecycle("twice the cores: " + (jvms.get() == 2 * c))
+            logger.lifecycle("workers: " + workers.get())
+          }
+        })
+        """)
+
+        when:
+        def defaults = gradleRunner().withArguments("printOptions").build()
+        def overridden = gradleRunner().withArguments("printOptions", "-Ptests.jvms=2C", "-Pmax.workers=3").build()
+        def invalid = gradleRunner().withArguments("printOptions", "-Pmax.workers=many").buildAndFail()
+        def zero = gradleRunner().withArguments("printOptions", "-Pmax.workers=0").buildAndFail()
+        def divisionByZero = gradleRunner().withArguments("printOptions", "-Ptests.jvms=cores/0").buildAndFail()
+
+        then:
+        containsLines(defaults.output, "half of the cores: true")
+        containsLines(defaults.output, "workers: 4")
+        containsLines(overridden.output, "twice the cores: true")
+        containsLines(overridden.output, "workers: 3")
+        invalid.output.contains("Build option 'max.workers' is of type PARALLELISM and expects a positive integer or a core-relative expression")
+        zero.output.contains("Parallelism must be at least 1: 0")
+        divisionByZero.output.contains("Division of cores by zero: cores/0")
+    }
+
+    def "size options parse units and percentages of memory"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        Provider<Long> heap = buildOptions.addSizeOption("tests.heapsize", "Test JVM heap.", "512m")
+        Provider<Long> share = buildOptions.addSizeOption("compiler.memory", "Compiler memory.", "25%")
+
+        tasks.register("printOptions", {
+          doLast {
+            logger.lifecycle("heap: " + heap.get())
+            logger.lifecycle("heap (jvm): -Xmx" + com.carrotsearch.gradle.buildinfra.buildoptions.MemorySize.format(heap.get()))
+            logger.lifecycle("share positive: " + (share.get() > 0))
+          }
+        })
+        """)
+
+        when:
+        def defaults = gradleRunner().withArguments("printOptions").build()
+        def overridden = gradleRunner().withArguments("printOptions", "-Ptests.heapsize=2G").build()
+        def invalid = gradleRunner().withArguments("printOptions", "-Ptests.heapsize=lots").buildAndFail()
+
+        then:
+        containsLines(defaults.output, "heap: 536870912")
+        containsLines(defaults.output, "heap (jvm): -Xmx512m")
+        containsLines(defaults.output, "share positive: true")
+        containsLines(overridden.output, "heap (jvm): -Xmx2g")
+        invalid.output.contains("Build option 'tests.heapsize' is of type SIZE and expects a size")
+    }
+
+    def "test shards partition test classes"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('java')
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        repositories {
+          mavenCentral()
+        }
+
+        dependencies {
+          testImplementation 'junit:junit:4.13.2'
+        }
+
+        buildOptions {
+          shardTests()
+        }
+        """)
+
+        def testDir = testProjectDir.toPath().resolve("src/test/java/shards")
+        Files.createDirectories(testDir)
+        def classes = (1..6).collect { "Shard${it}Test" }
+        classes.each { name ->
+            Files.writeString(testDir.resolve(name + ".java"), """
+            package shards;
+            public class ${name} {
+              @org.junit.Test public void test() {}
+            }
+            """)
+        }
+
+        def resultsDir = testProjectDir.toPath().resolve("build/test-results/test")
+        def executed = { ->
+            Files.list(resultsDir).withCloseable { paths ->
+                paths.map { it.fileName.toString() }
+                        .filter { it.startsWith("TEST-") }
+                        .map { it.replaceAll('^TEST-shards\\.|\\.xml$', '') }
+                        .toList() as Set
+            }
+        }
+
+        when:
+        gradleRunner().withArguments("test", "-Ptests.shard.count=2", "-Ptests.shard.index=0").build()
+        def shard0 = executed()
+        gradleRunner().withArguments("test", "-Ptests.shard.count=2", "-Ptests.shard.index=1").build()
+        def shard1 = executed()
+        def durations = gradleRunner().withArguments("updateTestDurations").build()
+        def invalid = gradleRunner().withArguments("test", "-Ptests.shard.count=2", "-Ptests.shard.index=2").buildAndFail()
+        gradleRunner().withArguments("test").build()
+        Files.writeString(testProjectDir.toPath().resolve("test-durations.properties"), "shards.Shard1Test=100\n")
+        def durationsChanged = gradleRunner().withArguments("test").build()
+
+        then:
+        shard0.size() == 3
+        shard1.size() == 3
+        (shard0 + shard1) == (classes as Set)
+        containsLines(durations.output, "Updated durations of 3 test classes")
+        Files.readString(testProjectDir.toPath().resolve("test-durations.properties")).contains("shards.")
+        invalid.output.contains("Test shard index must be between 0 and 2")
+        // Without sharding, the assignment (all classes) doesn't depend on durations.
+        durationsChanged.task(":test").outcome == TaskOutcome.UP_TO_DATE
+    }
+
+    def "untracked options forwarded to test JVMs don't re-run tests"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('java')
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        repositories {
+          mavenCentral()
+        }
+
+        dependencies {
+          testImplementation 'junit:junit:4.13.2'
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addBooleanOption("tests.verbose", "Verbose output.", false)
+          addOption("tests.filter", "Test filter.")
+          addOption("other", "Not forwarded.", "x")
+
+          forwardToTests("tests.*")
+          forwardToTestsUntracked("tests.verbose")
+        }
+        """)
+
+        def testDir = testProjectDir.toPath().resolve("src/test/java/forwarded")
+        Files.createDirectories(testDir)
+        Files.writeString(testDir.resolve("ForwardedTest.java"), """
+            package forwarded;
+            public class ForwardedTest {
+              @org.junit.Test public void test() {
+                org.junit.Assert.assertEquals("deadbeef", System.getProperty("tests.seed"));
+                org.junit.Assert.assertNull(System.getProperty("tests.filter"));
+                org.junit.Assert.assertNull(System.getProperty("other"));
+              }
+            }
+            """)
+
+        when:
+        def first = gradleRunner().withArguments("test").build()
+        def verbose = gradleRunner().withArguments("test", "-Ptests.verbose").build()
+        def seedChanged = gradleRunner().withArguments("test", "-Ptests.seed=cafe").buildAndFail()
+
+        then:
+        first.task(":test").outcome == TaskOutcome.SUCCESS
+        verbose.task(":test").outcome in [TaskOutcome.UP_TO_DATE, TaskOutcome.FROM_CACHE]
+        seedChanged.task(":test").outcome == TaskOutcome.FAILED
+    }
+
+    def "build config class is regenerated only when selected options change"() {
+        given:
+        buildFile(
+                """
+        import com.carrotsearch.gradle.buildinfra.buildoptions.BuildConfigTask
+
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("version", "Version.", "1.0")
+          addBooleanOption("feature.fast", "A feature flag.", false)
+          addIntOption("unrelated", "Not generated.", 1)
+        }
+
+        tasks.register("buildConfig", BuildConfigTask) {
+          className = "com.example.BuildConfig"
+          options("version", "feature.*")
+        }
+        """)
+
+        def generated = testProjectDir.toPath().resolve("build/generated/buildConfig/com/example/BuildConfig.java")
+
+        when:
+        def first = gradleRunner().withArguments("buildConfig").build()
+        def source = Files.readString(generated)
+        def unrelated = gradleRunner().withArguments("buildConfig", "-Punrelated=2").build()
+        def changed = gradleRunner().withArguments("buildConfig", "-Pfeature.fast=true").build()
+        def invalid = gradleRunner().withArguments("buildConfig", "-Pfeature.fast=yes").buildAndFail()
+
+        then:
+        first.task(":buildConfig").outcome == TaskOutcome.SUCCESS
+        source.contains("public static final String VERSION = \\"1.0\\";")
+        source.contains("public static final boolean FEATURE_FAST = false;")
+        !source.contains("UNRELATED")
+        unrelated.task(":buildConfig").outcome == TaskOutcome.UP_TO_DATE
+        changed.task(":buildConfig").outcome == TaskOutcome.SUCCESS
+        Files.readString(generated).contains("public static final boolean FEATURE_FAST = true;")
+        invalid.output.contains("Build option 'feature.fast' is of type BOOLEAN and expects a 'true' or 'false' value but was: yes")
+    }
+
+    def "build config task removes stale files and rejects constant name collisions"() {
+        given:
+        buildFile(
+                """
+        import com.carrotsearch.gradle.buildinfra.buildoptions.BuildConfigTask
+
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "A seed.", "deadbeef")
+          addOption("tests_seed", "Another seed.", "cafebabe")
+          addOption("config.class", "Generated class name.", "com.example.BuildConfig")
+        }
+
+        tasks.register("buildConfig", BuildConfigTask) {
+          className = buildOptions["config.class"]
+          options("tests.seed")
+        }
+
+        tasks.register("collidingConfig", BuildConfigTask) {
+          className = "com.example.Colliding"
+          options("tests*seed")
+        }
+        """)
+
+        def outputDir = testProjectDir.toPath().resolve("build/generated/buildConfig/com/example")
+
+        when:
+        gradleRunner().withArguments("buildConfig").build()
+        gradleRunner().withArguments("buildConfig", "-Pconfig.class=com.example.Renamed").build()
+        def colliding = gradleRunner().withArguments("collidingConfig").buildAndFail()
+
+        then:
+        !Files.exists(outputDir.resolve("BuildConfig.java"))
+        Files.exists(outputDir.resolve("Renamed.java"))
+        colliding.output.contains("Build options 'tests.seed' and 'tests_seed' map to the same constant name")
+    }
+
+    def "option digests only depend on selected options"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+          addOption("unrelated", "Not in the digest.", "x")
+        }
+
+        def testOptions = buildOptions.digest("tests.*")
+
+        tasks.register("printDigest", {
+          inputs.property("testOptions", testOptions)
+          doLast {
+            logger.lifecycle("digest: " + testOptions.get())
+          }
+        })
+        """)
+
+        def digestOf = { String output -> output.readLines().find { it.startsWith("digest: ") } }
+
+        when:
+        def first = gradleRunner().withArguments("printDigest").build()
+        def unrelated = gradleRunner().withArguments("printDigest", "-Punrelated=y").build()
+        def changed = gradleRunner().withArguments("printDigest", "-Ptests.seed=cafebabe").build()
+
+        then:
+        digestOf(first.output) != null
+        digestOf(first.output) == digestOf(unrelated.output)
+        digestOf(first.output) != digestOf(changed.output)
+    }
+
+    def "options can be exported to JSON"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+        }
+
+        tasks.named("exportBuildOptions") {
+          optionGroups {
+            group("Test options", "tests\\\\..*")
+          }
+        }
+        """)
+
+        def exported = testProjectDir.toPath().resolve("build/build-options/options.json")
+
+        when:
+        def first = gradleRunner().withArguments("exportBuildOptions", "-Ptests.jvms=8").build()
+        def json = new groovy.json.JsonSlurper().parse(exported.toFile())
+        def second = gradleRunner().withArguments("exportBuildOptions", "-Ptests.jvms=8").build()
+        def changed = gradleRunner().withArguments("exportBuildOptions").build()
+
+        then:
+        first.task(":exportBuildOptions").outcome == TaskOutcome.SUCCESS
+        second.task(":exportBuildOptions").outcome == TaskOutcome.UP_TO_DATE
+        changed.task(":exportBuildOptions").outcome == TaskOutcome.SUCCESS
+
+        def jvms = json.options.find { it.name == "tests.jvms" }
+        jvms.project == ":"
+        jvms.type == "INTEGER"
+        jvms.value == "8"
+        jvms.source == "GRADLE_PROPERTY"
+        jvms.defaultValue == "4"
+        jvms.group == "Test options"
+    }
+
+    def "option snapshots can be replayed"() {
+        given:
+        settingsFile("""
+        rootProject.name = 'test'
+        include 'sub'
+        """)
+
+        def script = """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+          addOption("tests.filter", "Test filter (no default).")
+        }
+
+        tasks.register("printOptions", {
+          def seed = buildOptions["tests.seed"]
+          def jvms = buildOptions["tests.jvms"]
+          def filter = buildOptions["tests.filter"]
+          doLast {
+            logger.lifecycle(project.path + " seed: " + seed.get() + ", jvms: " + jvms.get()
+                + ", filter: " + filter.getOrElse("--"))
+          }
+        })
+        """
+        buildFile(script)
+        def subDir = testProjectDir.toPath().resolve("sub")
+        Files.createDirectories(subDir)
+        Files.writeString(subDir.resolve("build.gradle"), script)
+
+        when:
+        gradleRunner().withArguments("exportAllOptions", "-Ptests.seed=cafebabe", "-Dtests.jvms=2").build()
+        Files.copy(
+                testProjectDir.toPath().resolve("build/build-options/all-options.json"),
+                testProjectDir.toPath().resolve("snapshot.json"))
+        Files.writeString(testProjectDir.toPath().resolve("build-options.local.properties"), "tests.filter=*IT")
+        def replayed = gradleRunner().withArguments("printOptions", "buildOptions", "-PbuildOptions.replay=snapshot.json",
+                "-Ptests.jvms=16", "-Ptests.filter=Foo*").build()
+
+        then:
+        containsLines(replayed.output, ": seed: cafebabe, jvms: 2, filter: --")
+        containsLines(replayed.output, ":sub seed: cafebabe, jvms: 2, filter: --")
+        replayed.output.contains("source: replayed snapshot")
+    }
+
+    def "option snapshots replay resolved parallelism and size values"() {
+        given:
+        buildFile("""
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addParallelismOption("tests.jvms", "Forked JVMs.", "cores")
+          addSizeOption("tests.heapsize", "Test JVM heap.", "25%")
+        }
+
+        tasks.register("printOptions", {
+          def jvms = buildOptions["tests.jvms"]
+          def heap = buildOptions["tests.heapsize"]
+          doLast {
+            logger.lifecycle("jvms: " + jvms.get() + ", heap: " + heap.get())
+          }
+        })
+        """)
+
+        when:
+        gradleRunner().withArguments("exportAllOptions").build()
+        def snapshot = testProjectDir.toPath().resolve("build/build-options/all-options.json")
+        def options = new groovy.json.JsonSlurper().parse(snapshot.toFile()).options
+        def jvms = options.find { it.name == "tests.jvms" }
+        def heap = options.find { it.name == "tests.heapsize" }
+        def replayed = gradleRunner().withArguments("printOptions",
+                "-PbuildOptions.replay=build/build-options/all-options.json").build()
+
+        then:
+        jvms.value == "cores"
+        jvms.resolvedValue ==~ /\d+/
+        heap.value == "25%"
+        heap.resolvedValue ==~ /\d+/
+        containsLines(replayed.output, "jvms: " + jvms.resolvedValue + ", heap: " + heap.resolvedValue)
+    }
+
+    def "profiles supply option values"() {
+        given:
+        Files.writeString(testProjectDir.toPath().resolve("build-options.properties"),
+                "profiles.fast.javadoc.skip=true\n")
+
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+          addBooleanOption("javadoc.skip", "Skip javadocs.", false)
+
+          profile("fast", ["tests.jvms": 1])
+        }
+        """)
+
+        when:
+        def result = gradleRunner().withArguments("buildOptions", "-PbuildOptions.profile=fast").build()
+        def overridden = gradleRunner().withArguments("buildOptions", "-PbuildOptions.profile=fast", "-Ptests.jvms=3").build()
+
+        then:
+        containsLines(result.output, "tests.jvms   = 1        # Forked JVMs. (type: integer, source: profile 'fast')")
+        containsLines(result.output, "javadoc.skip = true     # Skip javadocs. (type: boolean, source: profile 'fast')")
+        containsLines(overridden.output, "tests.jvms   = 3        # Forked JVMs. (type: integer, source: project property)")
+    }
+
+    def "option files in project directories override parent directories"() {
+        given:
+        settingsFile("""
+        rootProject.name = 'test'
+        include 'sub'
+        """)
+
+        def script = """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+        }
+
+        tasks.register("printOptions", {
+          def seed = buildOptions["tests.seed"]
+          def jvms = buildOptions["tests.jvms"]
+          doLast {
+            logger.lifecycle(project.path + " seed: " + seed.get() + ", jvms: " + jvms.get())
+          }
+        })
+        """
+        buildFile(script)
+        def subDir = testProjectDir.toPath().resolve("sub")
+        Files.createDirectories(subDir)
+        Files.writeString(subDir.resolve("build.gradle"), script)
+
+        Files.writeString(testProjectDir.toPath().resolve("build-options.properties"),
+                "tests.seed=cafebabe\ntests.jvms=2\n")
+        Files.writeString(subDir.resolve("build-options.properties"), "tests.jvms=3\n")
+
+        when:
+        def result = gradleRunner().withArguments("printOptions", ":sub:buildOptions").build()
+
+        then:
+        containsLines(result.output, ": seed: cafebabe, jvms: 2")
+        containsLines(result.output, ":sub seed: cafebabe, jvms: 3")
+        result.output.contains("source: sub/build-options.properties file")
+        result.output.contains("source: build-options.properties file")
+    }
+
+    def "unknown options are reported with suggestions"() {
+        given:
+        settingsFile("""
+        plugins {
+          id('com.carrotsearch.gradle.opts.settings')
+        }
+        """)
+
+        buildFile(
+                """
+        buildOptions {
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+          addOption("tests.seed", "Random seed.", "deadbeef")
+        }
+        """)
+        Files.writeString(testProjectDir.toPath().resolve("build-options.properties"),
+                "tests.seed=cafebabe\nprofiles.fast.tests.jvm=1\n")
+
+        when:
+        def failed = gradleRunner().withArguments("buildOptions", "-PbuildOptions.unknownOptions=fail", "-Ptest.jvms=16", "-Pversion=1.0").buildAndFail()
+        def warned = gradleRunner().withArguments("buildOptions", "-PbuildOptions.unknownOptions=warn").build()
+
+        then:
+        failed.output.contains("Unknown build option 'test.jvms' (project property), did you mean: tests.jvms?")
+        failed.output.contains("Unknown build option 'profiles.fast.tests.jvm' (key in build-options.properties), did you mean: tests.jvms?")
+        !failed.output.contains("'version'")
+        warned.task(":buildOptions").outcome == TaskOutcome.SUCCESS
+        warned.output.contains("Unknown build option 'profiles.fast.tests.jvm'")
+    }
+
+    def "unknown options are detected with isolated projects and the configuration cache"() {
+        given:
+        Files.createDirectories(testProjectDir.toPath().resolve("sub"))
+        settingsFile("""
+        plugins {
+          id('com.carrotsearch.gradle.opts.settings')
+        }
+
+        buildOptions {
+          unknownOptions = "warn"
+        }
+
+        include("sub")
+        """)
+
+        buildFile(
+                """
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+        }
+
+        tasks.register("noop", {})
+        """)
+        Files.writeString(testProjectDir.toPath().resolve("sub/build.gradle"), """
+        buildOptions {
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+        }
+        """)
+        def optionFile = testProjectDir.toPath().resolve("build-options.properties")
+        Files.writeString(optionFile, "tests.seed=cafebabe\ntests.jvm=1\n")
+
+        when:
+        def first = gradleRunner().withArguments(":noop", "-Dorg.gradle.unsafe.isolated-projects=true").build()
+        Files.writeString(optionFile, "tests.seed=cafebabe-2\ntests.jvm=1\n")
+        def valueChanged = gradleRunner().withArguments(":noop", "-Dorg.gradle.unsafe.isolated-projects=true").build()
+        Files.writeString(optionFile, "tests.seed=cafebabe-2\ntests.jvms=1\n")
+        def keyFixed = gradleRunner().withArguments(":noop", "-Dorg.gradle.unsafe.isolated-projects=true").build()
+
+        then:
+        first.output.contains("Unknown build option 'tests.jvm' (key in build-options.properties), did you mean: tests.jvms?")
+        valueChanged.output.contains("Reusing configuration cache.")
+        !keyFixed.output.contains("Reusing configuration cache.")
+        !keyFixed.output.contains("Unknown build option")
+    }
+
+    def "option report can be filtered"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("tests.seed", "Random seed.", "deadbeef")
+          addIntOption("tests.jvms", "Forked JVMs.", 4)
+          addOption("javadoc.opts", "Javadoc options.", "-quiet")
+        }
+
+        tasks.named("buildOptions").configure {
+          optionGroups {
+            group("Test options", "tests\\\\..*")
+          }
+        }
+        """)
+
+        when:
+        def filtered = gradleRunner().withArguments("buildOptions", "--filter", "*.jvms", "--filter", "javadoc.*").build()
+        def group = gradleRunner().withArguments("buildOptions", "--group", "Other options").build()
+        def overridden = gradleRunner().withArguments("buildOptions", "--overridden-only", "-Ptests.seed=cafebabe").build()
+
+        then:
+        filtered.output.contains("tests.jvms")
+        filtered.output.contains("javadoc.opts")
+        !filtered.output.contains("tests.seed")
+
+        group.output.contains("javadoc.opts")
+        !group.output.contains("tests.jvms")
+
+        overridden.output.contains("tests.seed")
+        !overridden.output.contains("tests.jvms")
+        !overridden.output.contains("javadoc.opts")
+    }
+
+    def "derived options are computed lazily from other options"() {
+        given:
+        buildFile(
+                """
+        import com.carrotsearch.gradle.buildinfra.buildoptions.BuildOptionType
+
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          registerDerivedOption("tests.heapsize", "Test JVM heap.", BuildOptionType.SIZE, ["tests.jvms"]) { values ->
+            (8192 / values["tests.jvms"].toInteger()) + "m"
+          }
+          registerDerivedOption("tests.jvms", "Forked JVMs.", BuildOptionType.INTEGER, ["ci"]) { values ->
+            values["ci"] == "true" ? 2 : 4
+          }
+          registerDerivedOption("unused", "Never evaluated.", ["ci"]) { values ->
+            throw new RuntimeException("Unused option evaluated.")
+          }
+          addBooleanOption("ci", "Running on CI.", false)
+        }
+
+        tasks.register("printOptions", {
+          def heap = buildOptions.getOption("tests.heapsize").asSizeProvider()
+          doLast {
+            logger.lifecycle("heap: " + heap.get())
+          }
+        })
+        """)
+
+        when:
+        def local = gradleRunner().withArguments("printOptions", "buildOptions", "--filter", "tests.*").build()
+        def ci = gradleRunner().withArguments("printOptions", "-Pci=true").build()
+
+        then:
+        containsLines(local.output, "heap: " + (2048L << 20))
+        local.output.contains("source: derived from: tests.jvms [ci]")
+        local.output.contains("source: derived from: ci")
+        containsLines(ci.output, "heap: " + (4096L << 20))
+    }
+
+    def "derived option cycles are reported"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          registerDerivedOption("a", "Option a.", ["b"]) { values -> values["b"] }
+          registerDerivedOption("b", "Option b.", ["c"]) { values -> values["c"] }
+          registerDerivedOption("c", "Option c.", ["a"]) { values -> values["a"] }
+        }
+        """)
+
+        when:
+        def result = gradleRunner().withArguments("buildOptions").buildAndFail()
+
+        then:
+        result.output.contains("Derived build option 'c' has a dependency cycle: c -> a -> b -> c")
+    }
+
+    def "task switches remove tasks from the task graph"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addBooleanOption("docs.skip", "Skip documentation.", false)
+          pruneTasks("docs.skip", "docs*")
+        }
+
+        def prepareDocs = tasks.register("prepareDocs", { doLast { logger.lifecycle("preparing docs") } })
+        def docs = tasks.register("docs", { dependsOn prepareDocs })
+        def compile = tasks.register("compile", { doLast { logger.lifecycle("compiling") } })
+        tasks.register("assembleAll", { dependsOn docs, compile })
+        """)
+
+        when:
+        def full = gradleRunner().withArguments("assembleAll").build()
+        def pruned = gradleRunner().withArguments("assembleAll", "buildOptions", "-Pdocs.skip=true").build()
+
+        then:
+        full.task(":prepareDocs").outcome == TaskOutcome.SUCCESS
+        full.task(":docs").outcome == TaskOutcome.SUCCESS
+
+        pruned.task(":compile").outcome == TaskOutcome.SUCCESS
+        pruned.task(":docs") == null
+        pruned.task(":prepareDocs") == null
+        containsLines(pruned.output, "docs.skip = on       # removes: :docs")
+    }
+
+    def "task switches fail with configure-on-demand"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addBooleanOption("docs.skip", "Skip documentation.", false)
+          pruneTasks("docs.skip", "docs*")
+        }
+
+        tasks.register("docs", { doLast { logger.lifecycle("docs") } })
+        """)
+
+        when:
+        def off = gradleRunner().withArguments("docs", "--configure-on-demand").build()
+        def on = gradleRunner().withArguments("docs", "--configure-on-demand", "-Pdocs.skip=true").buildAndFail()
+
+        then:
+        off.task(":docs").outcome == TaskOutcome.SUCCESS
+        on.output.contains("Task switches can't remove tasks with configure-on-demand enabled")
+    }
+
+    def "option resolution can be timed"() {
+        given:
+        buildFile(
+                """
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addOption("slow.option", "Slow computed default.", providers.provider { Thread.sleep(100); "slow" })
+          addOption("fast.option", "Fast option.", "fast")
+        }
+
+        tasks.register("printOptions", {
+          def slow = buildOptions["slow.option"]
+          def fast = buildOptions["fast.option"]
+          doLast {
+            logger.lifecycle("options: " + slow.get() + ", " + fast.get())
+          }
+        })
+        """)
+
+        when:
+        def timed = gradleRunner().withArguments("printOptions", "-PbuildOptions.timing=true", "-PbuildOptions.timing.summary=1").build()
+        def report = gradleRunner().withArguments("buildOptionsTiming").build()
+
+        then:
+        containsLines(timed.output, "options: slow, fast")
+        timed.output.contains("Slowest build options:")
+        timed.output.contains("  slow.option: ")
+        !timed.output.contains("  fast.option: ")
+        report.output.contains("source: COMPUTED_VALUE")
+        report.output.contains("source: EXPLICIT_VALUE")
+    }
+
+    def "pattern list options yield shared matchers"() {
+        given:
+        buildFile(
+                """
+        import com.carrotsearch.gradle.buildinfra.buildoptions.GlobMatcher
+
+        plugins {
+          id('com.carrotsearch.gradle.opts')
+        }
+
+        buildOptions {
+          addPatternsOption("tests.filter", "Test class filters.", "org.foo.*, *IT")
+        }
+
+        tasks.register("printOptions", {
+          def filter = buildOptions.getOption("tests.filter").asPatternsProvider()
+          doLast {
+            def m = filter.get()
+            logger.lifecycle("matches: " + ["org.foo.Bar", "com.FooIT", "com.Foo"].collect { m.matches(it) })
+            logger.lifecycle("shared: " + m.is(GlobMatcher.parse(m.patterns.join(","))))
+          }
+        })
+        """)
+
+        when:
+        def defaults = gradleRunner().withArguments("printOptions", "buildOptions").build()
+        def overridden = gradleRunner().withArguments("printOptions", "-Ptests.filter=com.*").build()
+
+        then:
+        containsLines(defaults.output, "matches: [true, true, false]")
+        containsLines(defaults.output, "shared: true")
+        defaults.output.contains("(type: patterns)")
+        containsLines(overridden.output, "matches: [false, true, true]")
+    }
 }
\ No newline at end of file